@@ -0,0 +1,62 @@
+package tablut;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of fixed-depth AI searches.  Each search starts with an
+ *  empty transposition table and evaluation cache, as the first search of
+ *  a game does.
+ *  @author Fourth Teerakapibal
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AIBench {
+
+    /** Name of the position searched. */
+    @Param({ "initial", "opening", "midgame", "endgame" })
+    public String position;
+
+    /** Depth of search. */
+    @Param({ "1", "2", "3" })
+    public int depth;
+
+    /** Set up the board and searcher. */
+    @Setup
+    public void setup() {
+        _board = Positions.get(position);
+        _ai = new AI();
+    }
+
+    /** Clear the tables filled by the previous search (not timed). */
+    @Setup(Level.Invocation)
+    public void clearTables() {
+        _ai.clearTables();
+    }
+
+    /** Find a move by searching to a fixed depth. */
+    @Benchmark
+    public Move findMove() {
+        return _ai.findMove(_board, depth);
+    }
+
+    /** The position searched. */
+    private Board _board;
+    /** The searcher. */
+    private AI _ai;
+}
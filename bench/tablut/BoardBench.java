@@ -0,0 +1,123 @@
+package tablut;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of the Board operations used by move generation and search.
+ *  Each runs on one of the positions in Positions.
+ *  @author Fourth Teerakapibal
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBench {
+
+    /** Name of the position benchmarked. */
+    @Param({ "initial", "opening", "midgame", "endgame" })
+    public String position;
+
+    /** Set up the board and the lists of moves and square pairs. */
+    @Setup
+    public void setup() {
+        _board = Positions.get(position);
+        _nmoves = _board.legalMoves(_board.turn(), _moves);
+        int move = 0;
+        for (int i = 0; i < _nmoves && move == 0; i += 1) {
+            if (!_board.isCapture(_moves[i])) {
+                move = _moves[i];
+            }
+        }
+        if (move == 0) {
+            throw new IllegalStateException("no quiet move in " + position);
+        }
+        _quietTo = Square.sq(Move.to(move));
+        _afterQuiet = new Board(_board);
+        _afterQuiet.makeMove(move);
+    }
+
+    /** Make and undo every legal move in the position. */
+    @Benchmark
+    public void makeUndo() {
+        for (int i = 0; i < _nmoves; i += 1) {
+            _board.makeMove(_moves[i]);
+            _board.undo();
+        }
+    }
+
+    /** Generate the legal moves for the player to move into a buffer. */
+    @Benchmark
+    public int legalMoves() {
+        return _board.legalMoves(_board.turn(), _buffer);
+    }
+
+    /** Generate the capturing moves and king escapes for the player to
+     *  move, as used by the quiescence search. */
+    @Benchmark
+    public int captureMoves() {
+        return _board.captureMoves(_board.turn(), _buffer);
+    }
+
+    /** Evaluate the position statically. */
+    @Benchmark
+    public int staticScore() {
+        return AI.staticScore(_board);
+    }
+
+    /** Generate the legal moves for the player to move as a List. */
+    @Benchmark
+    public Object legalMovesList() {
+        return _board.legalMoves(_board.turn());
+    }
+
+    /** Test for captures around the destination of a move that captures
+     *  nothing. */
+    @Benchmark
+    public Board capturehelper() {
+        _afterQuiet.capturehelper(_quietTo);
+        return _afterQuiet;
+    }
+
+    /** Test every move in the position for being unblocked. */
+    @Benchmark
+    public void isUnblockedMove(Blackhole bh) {
+        for (int i = 0; i < _nmoves; i += 1) {
+            bh.consume(_board.isUnblockedMove(Square.sq(Move.from(_moves[i])),
+                                              Square.sq(Move.to(_moves[i]))));
+        }
+    }
+
+    /** Encode the board as a String. */
+    @Benchmark
+    public String encodedBoard() {
+        return _board.encodedBoard();
+    }
+
+    /** The board benchmarked. */
+    private Board _board;
+    /** The legal moves in _board, in _moves[0 .. _nmoves-1]. */
+    private int[] _moves = new int[Board.MAX_MOVES];
+    /** Number of moves in _moves. */
+    private int _nmoves;
+    /** Scratch buffer for move generation. */
+    private int[] _buffer = new int[Board.MAX_MOVES];
+    /** Destination of the first legal move that captures nothing, which
+     *  is made in _afterQuiet. */
+    private Square _quietTo;
+    /** _board after that move. */
+    private Board _afterQuiet;
+}
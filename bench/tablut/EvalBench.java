@@ -0,0 +1,84 @@
+package tablut;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks comparing the hand-written evaluation with a network (see
+ *  Network), in positions evaluated per second.  The network is a random
+ *  one of the usual size, which costs the same as a trained one.  To
+ *  measure the vectorized kernel, add vector/classes to JMH_CLASSPATH and
+ *  "--add-modules jdk.incubator.vector" to the JVM arguments.
+ *  @author Fourth Teerakapibal
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvalBench {
+
+    /** The evaluation benchmarked: "classic" or "network". */
+    @Param({ "classic", "network" })
+    public String evaluator;
+
+    /** Name of the position benchmarked. */
+    @Param({ "opening", "midgame", "endgame" })
+    public String position;
+
+    /** Number of hidden units of the network. */
+    @Param({ "32" })
+    public int hidden;
+
+    /** Set up the evaluator, the board, and its legal moves. */
+    @Setup
+    public void setup() {
+        Network.setActive(evaluator.equals("network")
+                          ? Network.random(hidden, 1) : null);
+        _board = Positions.get(position);
+        _nmoves = _board.legalMoves(_board.turn(), _moves);
+        _next = 0;
+    }
+
+    /** Stop new Boards from using the network. */
+    @TearDown
+    public void tearDown() {
+        Network.setActive(null);
+    }
+
+    /** Evaluate the position. */
+    @Benchmark
+    public int staticScore() {
+        return AI.staticScore(_board);
+    }
+
+    /** Make one of the legal moves in turn, evaluate the result, and undo
+     *  it, as a search does at its leaves (including the cost of keeping
+     *  the evaluation's incremental state). */
+    @Benchmark
+    public int makeEvaluateUndo() {
+        _board.makeMove(_moves[_next]);
+        int score = AI.staticScore(_board);
+        _board.undo();
+        _next = _next + 1 == _nmoves ? 0 : _next + 1;
+        return score;
+    }
+
+    /** The board benchmarked. */
+    private Board _board;
+    /** Its legal moves, their number, and the next to make. */
+    private final int[] _moves = new int[Board.MAX_MOVES];
+    private int _nmoves, _next;
+}
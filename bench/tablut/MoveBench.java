@@ -0,0 +1,39 @@
+package tablut;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of parsing moves from their text form.
+ *  @author Fourth Teerakapibal
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveBench {
+
+    /** Parse each of a set of well-formed moves. */
+    @Benchmark
+    public void parse(Blackhole bh) {
+        for (String move : MOVES) {
+            bh.consume(Move.mv(move));
+        }
+    }
+
+    /** Moves in text form, both horizontal and vertical. */
+    private static final String[] MOVES = {
+        "a4-3", "e4-b", "f1-3", "d5-6", "i6-f", "h5-4", "c6-d", "e9-d"
+    };
+}
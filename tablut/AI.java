@@ -1,8 +1,11 @@
 package tablut;
 
-import java.util.List;
-
-import static java.lang.Math.*;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 
 import static tablut.Piece.*;
 
@@ -11,15 +14,6 @@ import static tablut.Piece.*;
  */
 class AI extends Player {
 
-    /** A position-score magnitude indicating a win (for white if positive,
-     *  black if negative). */
-    private static final int WINNING_VALUE = Integer.MAX_VALUE - 20;
-    /** A position-score magnitude indicating a forced win in a subsequent
-     *  move.  This differs from WINNING_VALUE to avoid putting off wins. */
-    private static final int WILL_WIN_VALUE = Integer.MAX_VALUE - 40;
-    /** A magnitude greater than a normal value. */
-    private static final int INFTY = Integer.MAX_VALUE;
-
     /** A new AI with no piece or controller (intended to produce
      *  a template). */
     AI() {
@@ -39,7 +33,10 @@ class AI extends Player {
     @Override
     String myMove() {
         Move move = findMove();
+        _stats = _searchStats;
+        _controller.logComment("%s", _stats);
         _controller.reportMove(move);
+        ponder(move);
         return move.toString();
     }
 
@@ -48,145 +45,312 @@ class AI extends Player {
         return false;
     }
 
+    @Override
+    String stats() {
+        return _stats == null ? null : _stats.toString();
+    }
+
+    @Override
+    void stop() {
+        if (_ponderThread != null) {
+            _searchers[0].halt();
+            join(_ponderThread);
+            _ponderThread = null;
+        }
+    }
+
     /** Return a move for me from the current position, assuming there
-     *  is a move. */
+     *  is a move, searching within the limits set in my controller.  If I
+     *  have been pondering this position, continues that search. */
     private Move findMove() {
         Board b = new Board(board());
-        if (_myPiece == BLACK) {
-            findMove(b, maxDepth(b), true, -1, -INFTY, INFTY);
-        } else {
-            findMove(b, maxDepth(b), true, 1, -INFTY, INFTY);
-        }
-        return _lastFoundMove;
-    }
-
-    /** The move found by the last call to one of the ...FindMove methods
-     *  below. */
-    private Move _lastFoundMove;
-
-    /** Find a move from position BOARD and return its value, recording
-     *  the move found in _lastFoundMove iff SAVEMOVE. The move
-     *  should have maximal value or have value > BETA if SENSE==1,
-     *  and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     *  DEPTH levels.  Searching at level 0 simply returns a static estimate
-     *      *  of the board value and does not set _lastMoveFound. */
-    private int findMove(Board board, int depth, boolean saveMove,
-                         int sense, int alpha, int beta) {
-        if (board.winner() != null || depth == 0) {
-            return staticScore(board);
-        }
-
-        if (sense == -1) {
-            int minimize = INFTY;
-            List<Move> possmoves = board.legalMoves(BLACK);
-            for (int i = 0; i < possmoves.size(); i++) {
-                Move next = possmoves.get(i);
-                board.makeMove(next);
-                int max = findMove(board, depth - 1, false, 1, alpha, beta);
-                minimize = Math.min(minimize, max);
-                board.undo();
-                if (minimize < beta) {
-
-                    if (saveMove) {
-                        _lastFoundMove = next;
-                    }
-                    beta = minimize;
-                }
-                if (beta <= alpha) {
-                    break;
-                }
+        if (_ponderThread != null && b.hashKey() == _ponderKey) {
+            long millis = _controller.searchTime();
+            _searchers[0].setStopTime(stopTime(millis));
+            join(_ponderThread);
+            _ponderThread = null;
+            if (_ponderMove != 0) {
+                return Move.mv(_ponderMove);
             }
-            return minimize;
-        } else {
-            int maximize = -INFTY;
-            List<Move> possmoves = board.legalMoves(WHITE);
-            for (int i = 0; i < possmoves.size(); i++) {
-                Move next = possmoves.get(i);
-                board.makeMove(next);
-                int min = findMove(board, depth - 1, false, -1, alpha, beta);
-                maximize = Math.max(maximize, min);
-                board.undo();
-
-                if (alpha < maximize) {
-                    if (saveMove) {
-                        _lastFoundMove = next;
-                    }
-                    alpha = maximize;
-                }
-                if (beta <= alpha) {
-                    break;
-                }
-            }
-            return maximize;
         }
+        stop();
+        return findMove(b, _controller.searchDepth(),
+                        _controller.searchTime(), _controller.searchNodes(),
+                        _controller.threads());
     }
 
-    /** Range for selectioning depth search.*/
-    static final int RANGE2 = 23;
+    /** If my controller allows pondering and my opponent is a manual
+     *  player, start searching in the background the position expected
+     *  after I make MOVE from the current position and my opponent
+     *  replies.  The expected reply is the best move recorded for the
+     *  position after MOVE in the transposition table; if there is none,
+     *  I do not ponder.  The search continues without limits until I am
+     *  next asked for a move or am stopped. */
+    private void ponder(Move move) {
+        if (!_controller.pondering()
+            || !(_myPiece == WHITE ? _controller.manualBlack()
+                 : _controller.manualWhite())) {
+            return;
+        }
+        Board b = new Board(board());
+        b.makeMove(move);
+        if (b.winner() != null) {
+            return;
+        }
+        int reply = TranspositionTable.move(table().probe(b.hashKey()));
+        if (reply == 0 || !b.isLegal(Move.mv(reply))) {
+            return;
+        }
+        b.makeMove(reply);
+        if (b.winner() != null) {
+            return;
+        }
+        _ponderKey = b.hashKey();
+        _ponderReply = reply;
+        int maxDepth = _controller.searchDepth();
+        Thread[] helpers =
+            startSearch(b, maxDepth, Long.MAX_VALUE,
+                        _controller.searchNodes(), _controller.threads());
+        _ponderThread =
+            new Thread(() -> _ponderMove = finishSearch(maxDepth, helpers));
+        _ponderThread.setDaemon(true);
+        _ponderThread.start();
+    }
 
-    /** Range for selecting depth search.*/
-    static final int RANGE3 = 40;
+    /** Return the reply by my opponent that I expect and am pondering
+     *  on, or null if I am not pondering. */
+    Move expectedReply() {
+        return _ponderThread == null ? null : Move.mv(_ponderReply);
+    }
 
+    /** Return a move for the player to move in BOARD found by searching
+     *  DEPTH levels, assuming there is a move.  BOARD is restored to its
+     *  original position. */
+    Move findMove(Board board, int depth) {
+        return findMove(board, depth, 0, 0, 1);
+    }
 
-    /** Return a heuristically determined maximum search depth
-     *  based on characteristics of BOARD. */
-    private static int maxDepth(Board board) {
-        return 1;
+    /** Return a move for the player to move in BOARD, assuming there is a
+     *  move, found by iterative deepening: searching 1, 2, ... levels until
+     *  MAXDEPTH levels are searched, a win is found, or a search runs out of
+     *  time (MILLIS milliseconds in all) or nodes (NODES positions in all).
+     *  MILLIS or NODES <= 0 means no limit.  The result is the best move
+     *  from the deepest search that finished; the first (one-level) search
+     *  always finishes.  BOARD is restored to its original position.
+     *
+     *  The search is made on THREADS threads.  This thread searches BOARD
+     *  and determines the result.  Each of the others searches its own copy
+     *  of BOARD, the odd-numbered ones starting a level deeper, until this
+     *  thread finishes; they contribute only through the shared
+     *  transposition table.  With one thread, the result depends only on
+     *  BOARD, the limits, and the contents of the table. */
+    Move findMove(Board board, int maxDepth, long millis, long nodes,
+                  int threads) {
+        Thread[] helpers =
+            startSearch(board, maxDepth, stopTime(millis), nodes, threads);
+        return Move.mv(finishSearch(maxDepth, helpers));
+    }
 
+    /** Return the value of System.nanoTime() MILLIS milliseconds from now,
+     *  or Long.MAX_VALUE if MILLIS <= 0. */
+    private static long stopTime(long millis) {
+        return millis > 0 ? System.nanoTime() + millis * 1000000
+            : Long.MAX_VALUE;
     }
 
-    /** Return a heuristic value for BOARD. */
-    private int staticScore(Board board) {
-        int numlegalmoves = board.legalMoves(WHITE).size();
-        int distking = disttoedge(board);
-        int dif = diffblackwhite(board);
-        return  dif + distking;
+    /** Prepare my Searchers to search BOARD to at most MAXDEPTH levels on
+     *  THREADS threads, the first of which is to stop at STOPTIME (a value
+     *  of System.nanoTime()) or after NODES positions (no limit if
+     *  NODES <= 0), and start the helper threads (see findMove).  Return
+     *  the helper threads, to be passed to finishSearch. */
+    private Thread[] startSearch(Board board, int maxDepth, long stopTime,
+                                 long nodes, int threads) {
+        long nodeLimit = nodes > 0 ? nodes : Long.MAX_VALUE;
+        _searchStart = System.nanoTime();
+        TranspositionTable table = table();
+        EvalCache evalCache = evalCache();
+        table.newSearch();
+        Searcher[] searchers = searchers(threads);
+        if (_controller != null) {
+            for (Searcher searcher : searchers) {
+                searcher.setPruning(_controller.nullMovePruning(),
+                                    _controller.lateMoveReductions(),
+                                    _controller.futilityPruning());
+            }
+        }
+        searchers[0].prepare(board, table, evalCache, stopTime, nodeLimit);
+        Thread[] helpers = new Thread[threads - 1];
+        for (int i = 1; i < threads; i += 1) {
+            Searcher helper = searchers[i];
+            int firstDepth = 1 + i % 2;
+            helper.prepare(helper.copyOf(board), table, evalCache,
+                           Long.MAX_VALUE, Long.MAX_VALUE);
+            helpers[i - 1] = new Thread(() -> helper.search(firstDepth,
+                                                            maxDepth));
+            helpers[i - 1].setDaemon(true);
+            helpers[i - 1].start();
+        }
+        return helpers;
     }
 
-    /** Return distance from king to edge.
-     * @param board current board
-     * */
-    private int disttoedge(Board board) {
-        if (board.winner() == BLACK) {
-            return -9 * 11;
+    /** Run the search prepared by startSearch to at most MAXDEPTH levels
+     *  on this thread, then stop and wait for HELPERS, the helper threads
+     *  it returned, and record the statistics of the whole search.  Return
+     *  the move found, in compact form. */
+    private int finishSearch(int maxDepth, Thread[] helpers) {
+        int best = _searchers[0].search(1, maxDepth);
+        for (int i = 1; i <= helpers.length; i += 1) {
+            _searchers[i].halt();
+        }
+        for (Thread helper : helpers) {
+            join(helper);
         }
-        if (board.winner() == WHITE) {
-            return +9 * 11;
+        SearchStats stats = new SearchStats();
+        stats.threads = helpers.length + 1;
+        stats.nanos = System.nanoTime() - _searchStart;
+        for (int i = 0; i <= helpers.length; i += 1) {
+            _searchers[i].addStats(stats, i == 0);
         }
-        return 0;
+        _searchStats = stats;
+        return best;
+    }
 
+    /** Return the statistics of my last search (which may be one I am
+     *  still making while pondering), or null if none. */
+    SearchStats searchStats() {
+        return _searchStats;
     }
 
-    /** Return number of black pieces surroudning king.
-     * @param king king's square
-     * @param board current board
-     * */
-    private int aroundking(Square king, Board board) {
-        int black = 0;
-        if (king == null) {
-            return 0;
+    /** Wait for THREAD to finish. */
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
         }
-        if (board == null) {
-            return 0;
-        }
-        for (int i = 0; i < 4; i++) {
-            Square sq2 = king.rookMove(i, 2);
-            if (sq2 == null) {
-                continue;
-            }
-            if (board.get(sq2).equals(BLACK)) {
-                black++;
+    }
+
+    /** Return an array of at least N Searchers, one per thread, keeping
+     *  those from previous searches (and their move-ordering tables). */
+    private Searcher[] searchers(int n) {
+        if (_searchers.length < n) {
+            Searcher[] searchers = new Searcher[n];
+            System.arraycopy(_searchers, 0, searchers, 0, _searchers.length);
+            for (int i = _searchers.length; i < n; i += 1) {
+                searchers[i] = new Searcher();
             }
+            _searchers = searchers;
+        }
+        return _searchers;
+    }
+
+    /** Return the transposition table to use: my controller's, so that
+     *  it persists between moves, or my own if I have no controller. */
+    private TranspositionTable table() {
+        if (_controller != null) {
+            return _controller.table();
+        }
+        if (_ownTable == null) {
+            _ownTable = new TranspositionTable(Controller.DEFAULT_TABLE_SIZE);
+        }
+        return _ownTable;
+    }
+
+    /** Return the evaluation cache to use: my controller's, or my own if
+     *  I have no controller. */
+    private EvalCache evalCache() {
+        if (_controller != null) {
+            return _controller.evalCache();
+        }
+        if (_ownEvalCache == null) {
+            _ownEvalCache = new EvalCache(Controller.DEFAULT_EVAL_CACHE_SIZE);
+        }
+        return _ownEvalCache;
+    }
+
+    /** Forget the results of earlier searches, so that the next starts
+     *  afresh: clear the transposition table and evaluation cache I
+     *  use and my Searchers' move-ordering history. */
+    void clearTables() {
+        table().clear();
+        evalCache().clear();
+        for (Searcher searcher : _searchers) {
+            searcher.clearHistory();
+        }
+    }
+
+    /** Searchers for each thread, the first of which runs on the thread
+     *  calling findMove. */
+    private Searcher[] _searchers = { new Searcher() };
+
+    /** Transposition table used when I have no controller, or null. */
+    private TranspositionTable _ownTable;
+    /** Evaluation cache used when I have no controller, or null. */
+    private EvalCache _ownEvalCache;
+
+    /** Value of System.nanoTime() when my last search started. */
+    private long _searchStart;
+    /** Statistics of my last finished search, or null. */
+    private volatile SearchStats _searchStats;
+    /** Statistics of the search for my last move, or null. */
+    private SearchStats _stats;
+
+    /** The thread searching while I ponder, or null if I am not
+     *  pondering. */
+    private Thread _ponderThread;
+    /** The hash key of the position I am pondering. */
+    private long _ponderKey;
+    /** The reply (in compact form) expected to the move that led to the
+     *  position I am pondering. */
+    private int _ponderReply;
+    /** The move (in compact form) found by the last ponder search, set
+     *  when its thread finishes. */
+    private int _ponderMove;
+
+    /** Use the evaluation weights in the file named NAME, in the form
+     *  written by Tuner (see EvalState.readWeights).  Must be called before
+     *  any Board is created. */
+    static void loadWeights(String name) throws IOException {
+        try (Reader in = new FileReader(name)) {
+            EvalState.setWeights(EvalState.readWeights(in));
         }
-        return black;
     }
 
-    /** Return the difference between white and black pieces.
-     * @param board current board
-     * */
-    private int diffblackwhite(Board board) {
-        int white = board.numwhite();
-        int black = board.numblack();
-        return white - black;
+    /** Evaluate positions on Boards created from now on with the network
+     *  in the file named NAME (see Network.read). */
+    static void loadNetwork(String name) throws IOException {
+        try (InputStream in =
+             new BufferedInputStream(new FileInputStream(name))) {
+            Network.setActive(Network.read(in));
+        }
+    }
+
+    /** Value of staticScore for a won position, greater than that of any
+     *  position still in play. */
+    private static final int DECIDED_SCORE = 9 * 11 * 100;
+
+    /** Return a heuristic value for BOARD, positive when it favors
+     *  white: DECIDED_SCORE in favor of the winner if there is one, and
+     *  otherwise the output of BOARD's network (see Network), if it has
+     *  one, or else the hand-written evaluation.  The terms of the
+     *  latter other than those for the king's escape routes (see
+     *  Board.escapeDistance) are kept by BOARD as it changes (see
+     *  EvalState). */
+    static int staticScore(Board board) {
+        Piece winner = board.winner();
+        if (winner == BLACK) {
+            return -DECIDED_SCORE;
+        }
+        if (winner == WHITE) {
+            return +DECIDED_SCORE;
+        }
+        if (board.network() != null) {
+            return Math.max(1 - DECIDED_SCORE,
+                            Math.min(DECIDED_SCORE - 1,
+                                     board.networkScore()));
+        }
+        return board.evalState().score()
+            + EvalState.escapeValue(board.escapeDistance(),
+                                    board.escapeRoutes());
     }
 }
@@ -1,24 +1,27 @@
 package tablut;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Stack;
+import java.util.Arrays;
 import java.util.List;
-import java.util.HashSet;
 import java.util.Formatter;
+import java.util.Random;
 
 import static tablut.Piece.*;
 import static tablut.Square.*;
-import static tablut.Move.mv;
 
 
-/** The state of a Tablut Game.
+/** The state of a Tablut Game.  The position is kept as bitboards: the
+ *  square with index K is bit K % 64 of word K / 64 of each two-word set.
  *  @author Fourth Teerakapibal*/
 class Board {
 
     /** The number of squares on a side of the board. */
     static final int SIZE = 9;
 
+    /** An upper bound on the number of legal moves in any position: no
+     *  square has more than 16 squares a rook move away. */
+    static final int MAX_MOVES = 16 * NUM_SQUARES;
+
     /** The throne (or castle) square and its four surrounding squares.. */
     static final Square THRONE = sq(4, 4),
         NTHRONE = sq(4, 5),
@@ -41,57 +44,128 @@ class Board {
     };
 
     /** Initializes a game board with SIZE squares on a side in the
-     *  initial position. */
+     *  initial position, evaluated by the active Network, if any. */
     Board() {
+        this(Network.active());
+    }
+
+    /** Initializes a game board in the initial position that keeps the
+     *  accumulator of NETWORK (none if null). */
+    Board(Network network) {
+        _network = network;
+        _accumulator = network == null ? null : new short[network.hidden()];
         init();
     }
 
     /** Initializes a copy of MODEL. */
     Board(Board model) {
+        _network = model._network;
+        _accumulator = model._accumulator == null ? null
+            : new short[model._accumulator.length];
         copy(model);
     }
 
-    /** Copies MODEL into me. */
+    /** Copies MODEL into me, including its history of moves, which I
+     *  keep separately from MODEL's: undoing or making moves on either
+     *  board afterwards does not affect the other. */
     void copy(Board model) {
         if (model == this) {
             return;
         }
-        init();
-        for (Square sq : SQUARE_LIST) {
-            _board.replace(sq, model._board.get(sq));
+        System.arraycopy(model._black, 0, _black, 0, WORDS);
+        System.arraycopy(model._white, 0, _white, 0, WORDS);
+        System.arraycopy(model._king, 0, _king, 0, WORDS);
+        System.arraycopy(model._occupied, 0, _occupied, 0, WORDS);
+        for (Piece side : SIDES) {
+            int s = side.ordinal(), n = model._pieceCount[s];
+            System.arraycopy(model._pieces[s], 0, _pieces[s], 0, n);
+            _pieceCount[s] = n;
         }
+        System.arraycopy(model._listPos, 0, _listPos, 0, NUM_SQUARES);
         this._turn = model._turn;
+        this._hash = model._hash;
+        this._kingIndex = model._kingIndex;
+        _eval.copy(model._eval);
+        if (_network != null) {
+            assert _network == model._network;
+            System.arraycopy(model._accumulator, 0, _accumulator, 0,
+                             _accumulator.length);
+        }
+        this._winner = model._winner;
+        this._repeated = model._repeated;
+        this._checkMoves = model._checkMoves;
         this._moveCount = model._moveCount;
         this._movelim = model._movelim;
-        this._undostack = model._undostack;
-        this._repeated = model._repeated;
 
+        for (int k = 0; k < _undoTop; k += 1) {
+            _keyCounts[(int) _undoKeys[k] & KEY_COUNTS_MASK] -= 1;
+        }
+        int n = model._undoTop;
+        reserveUndo(Math.max(n, model._undoMoves.length));
+        System.arraycopy(model._undoMoves, 0, _undoMoves, 0, n);
+        System.arraycopy(model._undoCaptures, 0, _undoCaptures, 0, n);
+        System.arraycopy(model._undoWinners, 0, _undoWinners, 0, n);
+        System.arraycopy(model._undoRepeated, 0, _undoRepeated, 0, n);
+        System.arraycopy(model._undoKeys, 0, _undoKeys, 0, n);
+        for (int k = 0; k < n; k += 1) {
+            _keyCounts[(int) _undoKeys[k] & KEY_COUNTS_MASK] += 1;
+        }
+        _undoTop = n;
     }
 
     /** Clears the board to the initial position. */
     void init() {
-        this._board = new HashMap<>();
-        for (int row = 0; row < this.SIZE; row++) {
-            for (int col = 0; col < this.SIZE; col++) {
-                Square cur = sq(col, row);
-                _board.put(cur, EMPTY);
-            }
+        Arrays.fill(_black, 0L);
+        Arrays.fill(_white, 0L);
+        Arrays.fill(_king, 0L);
+        Arrays.fill(_occupied, 0L);
+        Arrays.fill(_pieceCount, 0);
+        _kingIndex = -1;
+        _hash = 0;
+        _eval.clear();
+        if (_network != null) {
+            _network.clear(_accumulator);
         }
         for (Square black: INITIAL_ATTACKERS) {
-            _board.replace(black, BLACK);
+            put(BLACK, black);
         }
         for (Square white: INITIAL_DEFENDERS) {
-            _board.replace(white, WHITE);
+            put(WHITE, white);
         }
-        _board.replace(THRONE, KING);
+        put(KING, THRONE);
         _turn = BLACK;
+        _hash ^= BLACK_TO_MOVE;
         _winner = null;
+        _checkMoves = false;
         clearUndo();
         _moveCount = 0;
         _movelim = -3;
 
     }
 
+    /** Set me to the position in which the square with index K holds
+     *  CONTENTS[K] and TURN is to move, with no history of moves. */
+    void setPosition(Piece[] contents, Piece turn) {
+        init();
+        for (int k = 0; k < NUM_SQUARES; k += 1) {
+            if (get(k) != contents[k]) {
+                put(contents[k], sq(k));
+            }
+        }
+        if (turn != _turn) {
+            _turn = turn;
+            _hash ^= BLACK_TO_MOVE;
+        }
+        if (_kingIndex < 0) {
+            _winner = BLACK;
+        } else if (EDGE[_kingIndex]) {
+            _winner = WHITE;
+        }
+        _checkMoves = _winner == null;
+        _repeated = false;
+        clearUndo();
+    }
+
     /** Set the move limit to LIM.  It is an error if 2*LIM <= moveCount().
      * @param n new setting for limit. */
     void setMoveLimit(int n) {
@@ -99,6 +173,7 @@ class Board {
             throw new AssertionError("wrong lim");
         }
         this._movelim = n;
+        reserveUndo(2 * n);
     }
 
     /** Return a Piece representing whose move it is (WHITE or BLACK). */
@@ -109,6 +184,12 @@ class Board {
     /** Return the winner in the current position, or null if there is no winner
      *  yet. */
     Piece winner() {
+        if (_checkMoves) {
+            _checkMoves = false;
+            if (_winner == null && !hasMove(_turn)) {
+                _winner = _turn.opponent();
+            }
+        }
         return _winner;
     }
 
@@ -117,16 +198,25 @@ class Board {
         return _repeated;
     }
 
-    /** Record current position and set winner() next mover if the current
-     *  position is a repeat. */
+    /** Return a 64-bit Zobrist hash of the current position, covering the
+     *  placement of all pieces and the side to move. */
+    long hashKey() {
+        return _hash;
+    }
+
+    /** Set winner() to the player whose turn it is if the current position
+     *  (with the same side to move) is a repeat of an earlier one, so that
+     *  the player who just moved loses. */
     private void checkRepeated() {
-        if (_undostack.search(_board) != -1) {
-            if (turn() == BLACK) {
-                _winner = WHITE;
-            } else {
-                _winner = BLACK;
+        if (_keyCounts[(int) _hash & KEY_COUNTS_MASK] == 0) {
+            return;
+        }
+        for (int k = _undoTop - 1; k >= 0; k -= 1) {
+            if (_undoKeys[k] == _hash) {
+                _winner = _turn;
+                _repeated = true;
+                return;
             }
-            _repeated = true;
         }
     }
 
@@ -138,14 +228,11 @@ class Board {
 
     /** Return location of the king. */
     Square kingPosition() {
-
-        for (Square sq : SQUARE_LIST) {
-            if (_board.get(sq) == KING) {
-                return sq;
-            }
+        if (_kingIndex < 0) {
+            _winner = BLACK;
+            return null;
         }
-        _winner = BLACK;
-        return null;
+        return sq(_kingIndex);
     }
 
     /** Return the contents the square at S. */
@@ -156,7 +243,27 @@ class Board {
     /** Return the contents of the square at (COL, ROW), where
      *  0 <= COL, ROW <= 9. */
     final Piece get(int col, int row) {
-        return _board.get(Square.sq(col, row));
+        return get(Square.sq(col, row).index());
+    }
+
+    /** Return the contents of the square whose index is INDEX. */
+    private Piece get(int index) {
+        int w = index >>> 6;
+        long b = 1L << index;
+        if ((_occupied[w] & b) == 0) {
+            return EMPTY;
+        } else if ((_black[w] & b) != 0) {
+            return BLACK;
+        } else if ((_white[w] & b) != 0) {
+            return WHITE;
+        } else {
+            return KING;
+        }
+    }
+
+    /** Return true iff the square whose index is INDEX is occupied. */
+    private boolean occupied(int index) {
+        return (_occupied[index >>> 6] & (1L << index)) != 0;
     }
 
     /** Return the contents of the square at COL ROW. */
@@ -166,7 +273,89 @@ class Board {
 
     /** Set square S to P. */
     final void put(Piece p, Square s) {
-        _board.replace(s, p);
+        int index = s.index(), w = index >>> 6;
+        long b = 1L << index;
+        Piece old = get(index);
+        _hash ^= ZOBRIST[old.ordinal()][index] ^ ZOBRIST[p.ordinal()][index];
+        if (old == KING && _kingIndex == index) {
+            _kingIndex = -1;
+        }
+        if (old != EMPTY) {
+            removePiece(old.side().ordinal(), index);
+        }
+        if (p != EMPTY) {
+            int side = p.side().ordinal();
+            _listPos[index] = _pieceCount[side];
+            _pieces[side][_pieceCount[side]] = index;
+            _pieceCount[side] += 1;
+        }
+        _black[w] &= ~b;
+        _white[w] &= ~b;
+        _king[w] &= ~b;
+        _occupied[w] &= ~b;
+        switch (p) {
+        case BLACK:
+            _black[w] |= b;
+            break;
+        case WHITE:
+            _white[w] |= b;
+            break;
+        case KING:
+            _king[w] |= b;
+            _kingIndex = index;
+            break;
+        default:
+            break;
+        }
+        if (p != EMPTY) {
+            _occupied[w] |= b;
+        }
+        _eval.replace(old, p, index);
+        if (_network != null) {
+            _network.update(_accumulator, old, p, index);
+        }
+        if (p == KING) {
+            countKingNeighbors();
+        } else if (_kingIndex < 0) {
+            _eval.setKingNeighbors(0, 0);
+        } else if (isNeighbor(index, _kingIndex)) {
+            _eval.replaceNextToKing(old, p);
+        }
+    }
+
+    /** Record the numbers of black and white pieces next to the king in
+     *  my evaluation state. */
+    private void countKingNeighbors() {
+        int attackers, defenders;
+        attackers = defenders = 0;
+        for (int[] ray : RAYS[_kingIndex]) {
+            if (ray.length > 0) {
+                Piece p = get(ray[0]);
+                if (p == BLACK) {
+                    attackers += 1;
+                } else if (p == WHITE) {
+                    defenders += 1;
+                }
+            }
+        }
+        _eval.setKingNeighbors(attackers, defenders);
+    }
+
+    /** Return true iff the squares with indices K0 and K1 are orthogonally
+     *  adjacent. */
+    private static boolean isNeighbor(int k0, int k1) {
+        int d = k1 - k0;
+        return d == BOARD_SIZE || d == -BOARD_SIZE
+            || (d == 1 || d == -1) && k0 / BOARD_SIZE == k1 / BOARD_SIZE;
+    }
+
+    /** Remove the square index INDEX from the list of pieces of the side
+     *  whose Piece ordinal is SIDE, moving the last entry into its place. */
+    private void removePiece(int side, int index) {
+        int pos = _listPos[index], last = _pieces[side][_pieceCount[side] - 1];
+        _pieces[side][pos] = last;
+        _listPos[last] = pos;
+        _pieceCount[side] -= 1;
     }
 
     /** Set square S to P and record for undoing. */
@@ -194,7 +383,7 @@ class Board {
             if (fcol < tcol) {
                 for (int i = fcol + 1; i <= tcol; i++) {
                     Square check = sq(i, frow);
-                    if (!_board.get(check).equals(EMPTY)) {
+                    if (occupied(check.index())) {
                         return false;
                     }
                 }
@@ -202,7 +391,7 @@ class Board {
             if (fcol > tcol) {
                 for (int i = fcol - 1; i >= tcol; i--) {
                     Square check = sq(i, frow);
-                    if (!_board.get(check).equals(EMPTY)) {
+                    if (occupied(check.index())) {
                         return false;
                     }
                 }
@@ -212,7 +401,7 @@ class Board {
             if (frow < trow) {
                 for (int i = frow + 1; i <= trow; i++) {
                     Square check = sq(fcol, i);
-                    if (!_board.get(check).equals(EMPTY)) {
+                    if (occupied(check.index())) {
                         return false;
                     }
                 }
@@ -220,7 +409,7 @@ class Board {
             if (frow > trow) {
                 for (int i = frow - 1; i >= trow; i--) {
                     Square check = sq(fcol, i);
-                    if (!_board.get(check).equals(EMPTY)) {
+                    if (occupied(check.index())) {
                         return false;
                     }
                 }
@@ -238,7 +427,7 @@ class Board {
     boolean isLegal(Square from, Square to) {
         if (isLegal(from) && isUnblockedMove(from, to) && from.isRookMove(to)) {
             if (to == THRONE) {
-                return _board.get(from) == KING;
+                return get(from) == KING;
             } else {
                 return true;
             }
@@ -257,40 +446,62 @@ class Board {
         if (!isLegal(from, to)) {
             return;
         }
+        move(from, to);
+    }
+
+    /** Make the move whose compact encoding (see Move.pack) is MOVE,
+     *  assuming it is legal, as when it comes from legalMoves. */
+    void makeMove(int move) {
+        Square from = sq(Move.from(move)), to = sq(Move.to(move));
         assert isLegal(from, to);
-        HashMap<Square, Piece> newstate = deepCopy(_board);
-        _undostack.push(newstate);
-        Piece piece =  _board.get(from);
+        move(from, to);
+    }
+
+    /** Move FROM-TO, which must be legal. */
+    private void move(Square from, Square to) {
+        pushUndo(from, to);
+        Piece piece =  get(from);
         put(piece, to);
         put(EMPTY, from);
-        if (kingPosition() == null) {
-            int h = 1;
-        }
-        if (winner() == null && kingPosition().isEdge()) {
+        if (_winner == null && piece == KING && to.isEdge()) {
             _winner = WHITE;
         }
 
-        checkRepeated();
         capturehelper(to);
 
         _turn = _turn.opponent();
-        if (!hasMove(_turn)) {
-            _winner = _turn.opponent();
-        }
+        _hash ^= BLACK_TO_MOVE;
+        checkRepeated();
+        _checkMoves = true;
         _moveCount++;
         if (moveCount() >= 2 * _movelim && _movelim > 0) {
             _winner = _turn;
         }
     }
-    /** Deep copies the hashmap.
-     * @return copy hashmap
-     * @param board */
-    public HashMap<Square, Piece> deepCopy(HashMap<Square, Piece> board) {
-        HashMap<Square, Piece> copy = new HashMap<>();
-        for (Square sq: SQUARE_LIST) {
-            copy.put(sq, board.get(sq));
+    /** Push an undo record for the move FROM-TO, which is about to be
+     *  made, saving the current winner, repetition status, and position
+     *  key.  Captures are added to the record as they happen. */
+    private void pushUndo(Square from, Square to) {
+        reserveUndo(_undoTop + 1);
+        _undoMoves[_undoTop] = Move.pack(from.index(), to.index());
+        _undoCaptures[_undoTop] = 0;
+        _undoWinners[_undoTop] = _winner;
+        _undoRepeated[_undoTop] = _repeated;
+        _undoKeys[_undoTop] = _hash;
+        _keyCounts[(int) _hash & KEY_COUNTS_MASK] += 1;
+        _undoTop += 1;
+    }
+
+    /** Make sure there is room for at least N undo records. */
+    private void reserveUndo(int n) {
+        if (n > _undoMoves.length) {
+            int size = Math.max(n, 2 * _undoMoves.length);
+            _undoMoves = Arrays.copyOf(_undoMoves, size);
+            _undoCaptures = Arrays.copyOf(_undoCaptures, size);
+            _undoWinners = Arrays.copyOf(_undoWinners, size);
+            _undoRepeated = Arrays.copyOf(_undoRepeated, size);
+            _undoKeys = Arrays.copyOf(_undoKeys, size);
         }
-        return copy;
     }
 
     /** Checks all the directions of the square and calls capture if needed.
@@ -312,7 +523,20 @@ class Board {
     /** Capture the piece between SQ0 and SQ2, assuming a piece just moved to
      *  SQ0 and the necessary conditions are satisfied. */
     private void capture(Square sq0, Square sq2) {
-        Piece sp0 = _board.get(sq0); Piece sp2 = _board.get(sq2);
+        if (captures(sq0, sq2)) {
+            Square capsq = sq0.between(sq2);
+            if (get(capsq) == KING) {
+                _winner = BLACK;
+            }
+            recordCapture(sq0, capsq);
+            put(EMPTY, capsq);
+        }
+    }
+
+    /** Return true iff there is a piece between SQ0 and SQ2 and it is
+     *  captured, assuming a piece just moved to SQ0. */
+    private boolean captures(Square sq0, Square sq2) {
+        Piece sp0 = get(sq0); Piece sp2 = get(sq2);
         if (sp0 == KING) {
             sp0 = WHITE;
         }
@@ -320,53 +544,105 @@ class Board {
             sp2 = WHITE;
         }
         Square capsq = sq0.between(sq2);
-        if (_board.get(capsq) == KING && (capsq == NTHRONE || capsq == ETHRONE
+        Piece cap = get(capsq);
+        if (cap == EMPTY) {
+            return false;
+        } else if (cap == KING && (capsq == NTHRONE || capsq == ETHRONE
                 || capsq == STHRONE || capsq == WTHRONE || capsq == THRONE)) {
-            if (kingcap(capsq)) {
-                _board.replace(capsq, EMPTY);
-                _winner = BLACK;
+            return kingcap(capsq);
+        } else if (sq2 == THRONE) {
+            if (get(THRONE) == EMPTY || surthrown()) {
+                return cap != get(sq0);
+            } else {
+                return get(sq0) == WHITE && cap == BLACK;
             }
-
         } else {
-            if (sq2 == THRONE) {
-                if (_board.get(THRONE) == EMPTY) {
-                    if (_board.get(capsq) != _board.get(sq0)) {
-                        put(EMPTY, capsq);
-                    }
-                } else {
-                    if (surthrown()) {
-                        if (_board.get(capsq) != _board.get(sq0)) {
-                            put(EMPTY, capsq);
-                        }
-                    } else {
-                        if (_board.get(sq0) == WHITE
-                                && _board.get(capsq) == BLACK) {
-                            put(EMPTY, capsq);
-                        }
-                    }
-                }
+            return sp0 == sp2 && cap != get(sq0);
+        }
+    }
 
-            } else {
-                if (sp0 == sp2) {
-                    if (_board.get(capsq) != _board.get(sq0)) {
-                        if (_board.get(capsq) == KING) {
-                            _winner = BLACK;
-                        }
-                        put(EMPTY, capsq);
-                    }
+    /** Return true iff the legal move MOVE (in the compact form of
+     *  Move.pack) takes the king to the edge, winning the game. */
+    boolean isEscape(int move) {
+        return Move.from(move) == _kingIndex && EDGE[Move.to(move)];
+    }
+
+    /** Return true iff the legal move MOVE (in the compact form of
+     *  Move.pack) would capture at least one piece.  The board is not
+     *  changed: the rules of captures are applied to the squares around
+     *  the destination as they would be after the move. */
+    boolean isCapture(int move) {
+        int from = Move.from(move), to = Move.to(move);
+        Piece piece = get(from);
+        Square sq0 = sq(to);
+        for (int dir = 0; dir < 4; dir += 1) {
+            Square capsq = sq0.rookMove(dir, 1), sq2 = sq0.rookMove(dir, 2);
+            if (sq2 != null && capsq.index() != from
+                && occupied(capsq.index())
+                && wouldCapture(piece, from, to, capsq, sq2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff moving PIECE from the square with index FROM to the
+     *  one with index TO would capture the piece on CAPSQ, between TO and
+     *  SQ2, by the same rules as captures. */
+    private boolean wouldCapture(Piece piece, int from, int to,
+                                 Square capsq, Square sq2) {
+        Piece cap = get(capsq);
+        if (cap == KING && (capsq == NTHRONE || capsq == ETHRONE
+                || capsq == STHRONE || capsq == WTHRONE || capsq == THRONE)) {
+            for (int dir = 0; dir < 4; dir += 1) {
+                Square sq = capsq.rookMove(dir, 1);
+                if (sq != THRONE
+                    && getAfter(sq.index(), piece, from, to).side() != BLACK) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (sq2 == THRONE) {
+            int attackers = 0;
+            for (Square sq : THRONE_NEIGHBORS) {
+                if (getAfter(sq.index(), piece, from, to) == BLACK) {
+                    attackers += 1;
                 }
             }
+            if (getAfter(THRONE_INDEX, piece, from, to) == EMPTY
+                || attackers == 3) {
+                return cap != piece;
+            } else {
+                return piece == WHITE && cap == BLACK;
+            }
+        } else {
+            return piece.side() == getAfter(sq2.index(), piece, from, to).side()
+                && cap != piece;
         }
     }
+
+    /** Return the contents of the square with index INDEX after PIECE moves
+     *  from the square with index FROM to the one with index TO. */
+    private Piece getAfter(int index, Piece piece, int from, int to) {
+        return index == to ? piece : index == from ? EMPTY : get(index);
+    }
+
+    /** Add the piece on CAPSQ, which is adjacent to SQ0 and about to be
+     *  captured, to the undo record of the move to SQ0. */
+    private void recordCapture(Square sq0, Square capsq) {
+        _undoCaptures[_undoTop - 1] |=
+            get(capsq).ordinal() << (2 * sq0.direction(capsq));
+    }
+
     /** check if the king gets captured.
      * @return true or false
      * @param sq */
     boolean kingcap(Square sq) {
         for (int i = 0; i < 4; i++) {
             Square sq2 = sq.rookMove(i, 1);
-            if (_board.get(sq2).side() != BLACK && sq2 != THRONE) {
-                if (_board.get(sq2).side() == WHITE
-                        || _board.get(sq2).side() == EMPTY) {
+            if (get(sq2).side() != BLACK && sq2 != THRONE) {
+                if (get(sq2).side() == WHITE
+                        || get(sq2).side() == EMPTY) {
                     return false;
                 }
 
@@ -379,16 +655,16 @@ class Board {
     boolean surthrown() {
         boolean[] check = new boolean[4];
         int count = 0;
-        if (_board.get(NTHRONE).side() == BLACK) {
+        if (get(NTHRONE).side() == BLACK) {
             check[0] = true;
         }
-        if (_board.get(ETHRONE).side() == BLACK) {
+        if (get(ETHRONE).side() == BLACK) {
             check[1] = true;
         }
-        if (_board.get(STHRONE).side() == BLACK) {
+        if (get(STHRONE).side() == BLACK) {
             check[2] = true;
         }
-        if (_board.get(WTHRONE).side() == BLACK) {
+        if (get(WTHRONE).side() == BLACK) {
             check[3] = true;
         }
         for (int i = 0; i < 4; i++) {
@@ -399,50 +675,150 @@ class Board {
         return count == 3;
     }
 
+    /** Pass the move to the other player without moving anything, as the
+     *  search does to see whether a position is good enough even without a
+     *  move.  winner() must be null in the current position.  The pass is
+     *  not recorded for undo(); use undoNullMove to take it back before
+     *  undoing any other move. */
+    void makeNullMove() {
+        assert _winner == null;
+        _turn = _turn.opponent();
+        _hash ^= BLACK_TO_MOVE;
+        _checkMoves = true;
+    }
+
+    /** Take back the pass made by the last makeNullMove, after any moves
+     *  made since have been undone. */
+    void undoNullMove() {
+        _turn = _turn.opponent();
+        _hash ^= BLACK_TO_MOVE;
+        _winner = null;
+        _checkMoves = false;
+    }
+
     /** Undo one move.  Has no effect on the initial board. */
     void undo() {
-        if (_moveCount > 0) {
+        if (_moveCount > 0 && _undoTop > 0) {
             undoPosition();
             _moveCount -= 1;
             _turn = _turn.opponent();
-            _winner = null;
+            _hash ^= BLACK_TO_MOVE;
         }
     }
 
-    /** Remove record of current position in the set of positions encountered,
-     *  unless it is a repeated position or we are at the first move. */
+    /** Restore the position before the last recorded move from its undo
+     *  record and discard the record. */
     private void undoPosition() {
-        _board = _undostack.pop();
-        _repeated = false;
+        _undoTop -= 1;
+        int move = _undoMoves[_undoTop];
+        Square from = sq(Move.from(move)), to = sq(Move.to(move));
+        put(get(to), from);
+        put(EMPTY, to);
+        int captures = _undoCaptures[_undoTop];
+        for (int dir = 0; captures != 0; dir += 1, captures >>>= 2) {
+            if ((captures & 3) != 0) {
+                put(PIECES[captures & 3], to.rookMove(dir, 1));
+            }
+        }
+        _winner = _undoWinners[_undoTop];
+        _repeated = _undoRepeated[_undoTop];
+        _checkMoves = false;
+        _keyCounts[(int) _undoKeys[_undoTop] & KEY_COUNTS_MASK] -= 1;
     }
 
     /** Clear the undo stack and board-position counts. Does not modify the
      *  current position or win status. */
     void clearUndo() {
-        _undostack.empty();
+        _undoTop = 0;
+        Arrays.fill(_keyCounts, 0);
 
     }
 
     /** Return a new mutable list of all legal moves on the current board for
      *  SIDE (ignoring whose turn it is at the moment). */
     List<Move> legalMoves(Piece side) {
-        HashSet<Square> location = pieceLocations(side);
-        ArrayList<Move> movearr = new ArrayList<>();
-        for (Square piecesq : location) {
-            for (Square tosq : SQUARE_LIST) {
-                if (isLegal(piecesq, tosq)) {
-                    Move move = mv(piecesq, tosq);
-                    movearr.add(move);
+        int[] moves = new int[MAX_MOVES];
+        int n = legalMoves(side, moves);
+        ArrayList<Move> movearr = new ArrayList<>(n);
+        for (int k = 0; k < n; k += 1) {
+            movearr.add(Move.mv(moves[k]));
+        }
+        return movearr;
+    }
+
+    /** Store the compact encodings (see Move.pack) of all legal moves on
+     *  the current board for SIDE (ignoring whose turn it is at the moment)
+     *  in MOVES[0 .. N-1], and return N.  MOVES must have room for
+     *  MAX_MOVES entries. */
+    int legalMoves(Piece side, int[] moves) {
+        assert side != EMPTY;
+        int n = 0;
+        int[] pieces = _pieces[side.ordinal()];
+        for (int k = _pieceCount[side.ordinal()] - 1; k >= 0; k -= 1) {
+            int from = pieces[k];
+            for (int[] ray : RAYS[from]) {
+                for (int to : ray) {
+                    if (occupied(to)) {
+                        break;
+                    }
+                    if (to != THRONE_INDEX || from == _kingIndex) {
+                        moves[n] = Move.pack(from, to);
+                        n += 1;
+                    }
                 }
             }
         }
-        return movearr;
+        return n;
+    }
 
+    /** Store the compact encodings of the legal moves for SIDE on the
+     *  current board that either capture (see isCapture) or move the king
+     *  to the edge in MOVES[0 .. N-1], and return N.  These are the moves
+     *  that change the material or end the game.  MOVES must have room for
+     *  MAX_MOVES entries. */
+    int captureMoves(Piece side, int[] moves) {
+        assert side != EMPTY;
+        int n = 0;
+        int[] pieces = _pieces[side.ordinal()];
+        for (int k = _pieceCount[side.ordinal()] - 1; k >= 0; k -= 1) {
+            int from = pieces[k];
+            boolean king = from == _kingIndex;
+            for (int[] ray : RAYS[from]) {
+                for (int to : ray) {
+                    if (occupied(to)) {
+                        break;
+                    }
+                    int move = Move.pack(from, to);
+                    if ((to != THRONE_INDEX || king)
+                        && (king && EDGE[to] || isCapture(move))) {
+                        moves[n] = move;
+                        n += 1;
+                    }
+                }
+            }
+        }
+        return n;
     }
 
-    /** Return true iff SIDE has a legal move. */
+    /** Return true iff SIDE has a legal move.  Stops at the first one
+     *  found. */
     boolean hasMove(Piece side) {
-        return !legalMoves(side).isEmpty();
+        assert side != EMPTY;
+        int[] pieces = _pieces[side.ordinal()];
+        for (int k = _pieceCount[side.ordinal()] - 1; k >= 0; k -= 1) {
+            int from = pieces[k];
+            for (int[] ray : RAYS[from]) {
+                for (int to : ray) {
+                    if (occupied(to)) {
+                        break;
+                    }
+                    if (to != THRONE_INDEX || from == _kingIndex) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
     }
 
     @Override
@@ -476,40 +852,135 @@ class Board {
         return out.toString();
     }
 
-    /** Return the locations of all pieces on SIDE. */
-    private HashSet<Square> pieceLocations(Piece side) {
-        assert side != EMPTY;
-        HashSet<Square> location = new HashSet<>();
-        for (Square sq : SQUARE_LIST) {
-            if (_board.get(sq) == side) {
-                location.add(sq);
-            }
-            if (_board.get(sq) == KING && side == WHITE) {
-                location.add(sq);
-            }
-        }
-        return location;
-    }
-
-    /** Return the contents of _board in the order of SQUARE_LIST as a sequence
-     *  of characters: the toString values of the current turn and Pieces. */
+    /** Return the contents of the board in the order of SQUARE_LIST as a
+     *  sequence of characters: the toString values of the current turn and
+     *  Pieces. */
     String encodedBoard() {
         char[] result = new char[Square.SQUARE_LIST.size() + 1];
         result[0] = turn().toString().charAt(0);
-        for (Square sq : SQUARE_LIST) {
-            result[sq.index() + 1] = get(sq).toString().charAt(0);
+        for (int k = 0; k < NUM_SQUARES; k += 1) {
+            result[k + 1] = get(k).toString().charAt(0);
         }
         return new String(result);
     }
 
     /** Return the number of black pieces on the board.*/
     int numblack() {
-        return pieceLocations(BLACK).size();
+        return _pieceCount[BLACK.ordinal()];
     }
 
-    /** Return the number of white pieces on the board.*/
+    /** Return the number of white pieces, including the king, on the
+     *  board.*/
     int numwhite() {
-        return pieceLocations(WHITE).size() + 1;
+        return _pieceCount[WHITE.ordinal()];
+    }
+
+    /** Return the number of pieces on SIDE (WHITE, counting the king, or
+     *  BLACK). */
+    int pieceCount(Piece side) {
+        return _pieceCount[side.side().ordinal()];
+    }
+
+    /** Return the index of the square holding the Kth piece on SIDE, where
+     *  0 <= K < pieceCount(SIDE).  The order is arbitrary and changes as
+     *  pieces are moved and captured. */
+    int pieceIndex(Piece side, int k) {
+        return _pieces[side.side().ordinal()][k];
+    }
+
+    /** Return the index of the square holding the king, or -1 if it has
+     *  been captured. */
+    int kingIndex() {
+        return _kingIndex;
+    }
+
+    /** Return the terms of the static evaluation of my position, which
+     *  I keep up to date as pieces move. */
+    EvalState evalState() {
+        return _eval;
+    }
+
+    /** Return the network whose accumulator I keep, or null if none. */
+    Network network() {
+        return _network;
+    }
+
+    /** Return the output of my network for my position, assuming I have
+     *  one. */
+    int networkScore() {
+        return _network.evaluate(_accumulator);
+    }
+
+    /** Return the least number of moves the king needs to reach the edge
+     *  if no other piece moves, or MAX_ESCAPE_DISTANCE + 1 if it needs
+     *  more than MAX_ESCAPE_DISTANCE or has been captured. */
+    int escapeDistance() {
+        return escapes() >>> ESCAPE_SHIFT;
+    }
+
+    /** Return the number of edge squares the king can reach in
+     *  escapeDistance() moves if no other piece moves (0 if none within
+     *  MAX_ESCAPE_DISTANCE moves). */
+    int escapeRoutes() {
+        return escapes() & ESCAPE_ROUTES_MASK;
+    }
+
+    /** Return escapeDistance() and escapeRoutes(), packed, computing them
+     *  if they are not in _escapeCache. */
+    private int escapes() {
+        long key = _turn == BLACK ? _hash ^ BLACK_TO_MOVE : _hash;
+        int slot = (int) key & ESCAPE_CACHE_MASK;
+        if (_escapeKeys[slot] != key || _escapeValues[slot] == 0) {
+            _escapeKeys[slot] = key;
+            _escapeValues[slot] = findEscapes();
+        }
+        return _escapeValues[slot];
+    }
+
+    /** Return escapeDistance() and escapeRoutes(), packed, by searching
+     *  outward from the king's square one move at a time, marking each
+     *  square reached in _escapeReached. */
+    private int findEscapes() {
+        if (_kingIndex < 0) {
+            return (MAX_ESCAPE_DISTANCE + 1) << ESCAPE_SHIFT;
+        }
+        if (EDGE[_kingIndex]) {
+            return 1;
+        }
+        long[] reached = _escapeReached;
+        int[] squares = _escapeSquares;
+        Arrays.fill(reached, 0L);
+        reached[_kingIndex >>> 6] |= 1L << _kingIndex;
+        squares[0] = _kingIndex;
+        int start = 0, end = 1;
+        for (int dist = 1; dist <= MAX_ESCAPE_DISTANCE; dist += 1) {
+            int routes = 0, next = end;
+            for (int i = start; i < end; i += 1) {
+                for (int[] ray : RAYS[squares[i]]) {
+                    for (int to : ray) {
+                        long b = 1L << to;
+                        if ((_occupied[to >>> 6] & b) != 0) {
+                            break;
+                        }
+                        if ((reached[to >>> 6] & b) == 0) {
+                            reached[to >>> 6] |= b;
+                            if (EDGE[to]) {
+                                routes += 1;
+                            } else {
+                                squares[next] = to;
+                                next += 1;
+                            }
+                        }
+                    }
+                }
+            }
+            if (routes > 0) {
+                return (dist << ESCAPE_SHIFT) | routes;
+            }
+            start = end;
+            end = next;
+        }
+        return (MAX_ESCAPE_DISTANCE + 1) << ESCAPE_SHIFT;
     }
 
     /** Piece whose turn it is (WHITE or BLACK). */
@@ -521,13 +992,153 @@ class Board {
     private int _moveCount;
     /** True when current board is a repeated position (ending the game). */
     private boolean _repeated;
+    /** True when winner() must still check whether the player to move has
+     *  any legal move.  Set by makeMove, so that the check is only done
+     *  on demand. */
+    private boolean _checkMoves;
+    /** Index of the square holding the king, or -1 if it has been
+     *  captured. */
+    private int _kingIndex = -1;
+    /** _pieces[s][0 .. _pieceCount[s]-1] are the indices of the squares
+     *  holding the pieces on the side whose Piece ordinal is S (the king
+     *  is on WHITE's side). */
+    private final int[][] _pieces = new int[PIECES.length][NUM_SQUARES];
+    /** The number of pieces on each side, indexed by Piece ordinal. */
+    private final int[] _pieceCount = new int[PIECES.length];
+    /** _listPos[k] is the position of the square with index K in the
+     *  _pieces list of its side, if it is occupied. */
+    private final int[] _listPos = new int[NUM_SQUARES];
+    /** The terms of the static evaluation of my position. */
+    private final EvalState _eval = new EvalState();
+    /** The network evaluating my positions, or null, and its accumulator
+     *  for my position. */
+    private final Network _network;
+    private final short[] _accumulator;
+    /** A cache of the results of findEscapes, indexed by the low-order
+     *  bits of the position key (ignoring whose turn it is): the keys,
+     *  and the packed results (0 if empty). */
+    private final long[] _escapeKeys = new long[ESCAPE_CACHE_SIZE];
+    private final int[] _escapeValues = new int[ESCAPE_CACHE_SIZE];
+    /** Work areas for findEscapes: the squares the king has reached, and
+     *  those of them not on the edge, in order of distance. */
+    private final long[] _escapeReached = new long[WORDS];
+    private final int[] _escapeSquares = new int[NUM_SQUARES];
+
+    /** Number of longs needed to hold one bit per square. */
+    private static final int WORDS = (NUM_SQUARES + Long.SIZE - 1) / Long.SIZE;
+
+    /** Size of _keyCounts, a power of 2. */
+    private static final int KEY_COUNTS_SIZE = 1 << 12;
+
+    /** Mask selecting the bits of a position key that index _keyCounts. */
+    private static final int KEY_COUNTS_MASK = KEY_COUNTS_SIZE - 1;
+
+    /** The greatest distance for which escapeDistance searches. */
+    static final int MAX_ESCAPE_DISTANCE = 3;
+
+    /** Size of _escapeKeys and _escapeValues, a power of 2. */
+    private static final int ESCAPE_CACHE_SIZE = 1 << 10;
+
+    /** Mask selecting the bits of a position key that index the escape
+     *  cache. */
+    private static final int ESCAPE_CACHE_MASK = ESCAPE_CACHE_SIZE - 1;
+
+    /** Position of the distance in a packed result of findEscapes, and
+     *  the mask for the number of routes. */
+    private static final int ESCAPE_SHIFT = 8,
+        ESCAPE_ROUTES_MASK = (1 << ESCAPE_SHIFT) - 1;
+
+    /** Initial number of undo records allocated. */
+    private static final int INITIAL_UNDO = 128;
+
+    /** All Pieces, indexed by ordinal. */
+    private static final Piece[] PIECES = Piece.values();
 
-    /** Create the _board.*/
-    private HashMap<Square, Piece> _board;
+    /** The two sides. */
+    private static final Piece[] SIDES = { WHITE, BLACK };
+
+    /** Index of THRONE. */
+    private static final int THRONE_INDEX = THRONE.index();
+
+    /** The squares next to THRONE. */
+    private static final Square[] THRONE_NEIGHBORS = {
+        NTHRONE, ETHRONE, STHRONE, WTHRONE
+    };
+
+    /** RAYS[k][d] contains the indices of the squares in ROOK_SQUARES[k][d],
+     *  in the same order (increasing distance from the square with index
+     *  K). */
+    private static final int[][][] RAYS = new int[NUM_SQUARES][4][];
+
+    /** EDGE[k] is true iff the square with index K is on the edge. */
+    private static final boolean[] EDGE = new boolean[NUM_SQUARES];
+
+    static {
+        for (int k = 0; k < NUM_SQUARES; k += 1) {
+            EDGE[k] = sq(k).isEdge();
+            for (int d = 0; d < 4; d += 1) {
+                SqList ray = ROOK_SQUARES[k][d];
+                RAYS[k][d] = new int[ray.size()];
+                for (int i = 0; i < ray.size(); i += 1) {
+                    RAYS[k][d][i] = ray.get(i).index();
+                }
+            }
+        }
+    }
+
+    /** ZOBRIST[p][k] is the random key for Piece with ordinal P on the
+     *  square with index K.  The keys for EMPTY are 0. */
+    private static final long[][] ZOBRIST =
+        new long[PIECES.length][NUM_SQUARES];
+
+    /** The key included in the hash of positions with black to move. */
+    private static final long BLACK_TO_MOVE;
+
+    static {
+        Random keys = new Random(0x7AB107L);
+        for (Piece p : PIECES) {
+            if (p != EMPTY) {
+                for (int k = 0; k < NUM_SQUARES; k += 1) {
+                    ZOBRIST[p.ordinal()][k] = keys.nextLong();
+                }
+            }
+        }
+        BLACK_TO_MOVE = keys.nextLong();
+    }
+
+    /** Bitboards of the black pieces, white pieces (other than the king),
+     *  the king, and all occupied squares. */
+    private final long[] _black = new long[WORDS], _white = new long[WORDS],
+        _king = new long[WORDS], _occupied = new long[WORDS];
 
     /** move limit.*/
     private int _movelim;
 
-    /** Stack with all the previous moves. */
-    private Stack<HashMap<Square, Piece>> _undostack = new Stack<>();
+    /** Number of undo records in use (one per move not undone). */
+    private int _undoTop;
+
+    /** The compact encodings (see Move.pack) of the recorded moves. */
+    private int[] _undoMoves = new int[INITIAL_UNDO];
+
+    /** The pieces captured by each recorded move: two bits (a Piece
+     *  ordinal, 0 for none) for each direction from its destination, as
+     *  numbered by Square.rookMove, starting at the low-order bits. */
+    private int[] _undoCaptures = new int[INITIAL_UNDO];
+
+    /** The value of winner() before each recorded move. */
+    private Piece[] _undoWinners = new Piece[INITIAL_UNDO];
+
+    /** The value of repeatedPosition() before each recorded move. */
+    private boolean[] _undoRepeated = new boolean[INITIAL_UNDO];
+
+    /** The hash key of the position before each recorded move. */
+    private long[] _undoKeys = new long[INITIAL_UNDO];
+
+    /** _keyCounts[h] is the number of keys in _undoKeys whose low-order
+     *  bits are H: a cheap filter that lets checkRepeated skip the search
+     *  of _undoKeys for almost all positions that are not repeats. */
+    private int[] _keyCounts = new int[KEY_COUNTS_SIZE];
+
+    /** Zobrist hash of the current position, as returned by hashKey. */
+    private long _hash;
 }
@@ -1,6 +1,7 @@
 package tablut;
 
 import java.io.PrintStream;
+import java.util.Map;
 import java.util.Random;
 import java.util.Scanner;
 import java.util.regex.Pattern;
@@ -110,6 +111,88 @@ final class Controller {
         }
     }
 
+    /** Return the transposition table shared by AIs.  It persists from
+     *  move to move. */
+    TranspositionTable table() {
+        return _table;
+    }
+
+    /** Replace the transposition table with an empty one of about
+     *  MEGABYTES megabytes. */
+    void setTableSize(int megabytes) {
+        _table = new TranspositionTable(megabytes);
+    }
+
+    /** Return the evaluation cache shared by AIs. */
+    EvalCache evalCache() {
+        return _evalCache;
+    }
+
+    /** Replace the evaluation cache with an empty one of about MEGABYTES
+     *  megabytes. */
+    void setEvalCacheSize(int megabytes) {
+        _evalCache = new EvalCache(megabytes);
+    }
+
+    /** Return the number of threads an AI may use to search for a move. */
+    int threads() {
+        return _threads;
+    }
+
+    /** Allow AIs to search on THREADS threads, where THREADS > 0. */
+    void setThreads(int threads) {
+        _threads = threads;
+    }
+
+    /** Make the moves of AIs depend only on the position and the random
+     *  seed rather than on timing, as for testing: replace the default
+     *  time limit with a limit of DEFAULT_TESTING_NODES positions.  The
+     *  "time" and "nodes" commands still change the limits.  Searches on
+     *  more than one thread and pondering remain timing-dependent. */
+    void setTesting() {
+        _searchTime = 0;
+        _searchNodes = DEFAULT_TESTING_NODES;
+    }
+
+    /** Return true iff AIs may ponder: search on their opponents' time
+     *  for their next move. */
+    boolean pondering() {
+        return _ponder;
+    }
+
+    /** Return true iff AIs may use null-move pruning. */
+    boolean nullMovePruning() {
+        return _nullMove;
+    }
+
+    /** Return true iff AIs may use late-move reductions. */
+    boolean lateMoveReductions() {
+        return _lmr;
+    }
+
+    /** Return true iff AIs may use futility pruning. */
+    boolean futilityPruning() {
+        return _futility;
+    }
+
+    /** Return the maximum number of levels an AI may search for a move. */
+    int searchDepth() {
+        return _searchDepth;
+    }
+
+    /** Return the number of milliseconds an AI may spend searching for a
+     *  move, or 0 if there is no limit.  Either this or searchNodes() is
+     *  positive. */
+    long searchTime() {
+        return _searchTime;
+    }
+
+    /** Return the number of positions an AI may visit while searching for
+     *  a move, or 0 if there is no limit. */
+    long searchNodes() {
+        return _searchNodes;
+    }
+
     /** Return true iff white is a manual player. */
     boolean manualWhite() {
         return _white.isManual();
@@ -171,9 +254,16 @@ final class Controller {
         new Command("dump$", this::doDump),
         new Command("undo$", this::doUndo),
         new Command("manual\\s+(white|black)$", this::doManual),
-        new Command("auto\\s+(white|black)$", this::doAuto),
+        new Command("auto\\s+(white|black)(\\s+mcts)?$", this::doAuto),
         new Command("limit\\s+(\\d+)$", this::doLimit),
+        new Command("time\\s+(\\d+)$", this::doTime),
+        new Command("depth\\s+(\\d+)$", this::doDepth),
+        new Command("nodes\\s+(\\d+)$", this::doNodes),
         new Command("toggle\\s+" + SQ + "$", this::doToggle),
+        new Command("perft\\s+(\\d+)(\\s+divide)?$", this::doPerft),
+        new Command("ponder\\s+(on|off)$", this::doPonder),
+        new Command("stats$", this::doStats),
+        new Command("(nullmove|lmr|futility)\\s+(on|off)$", this::doPruning),
         new Command(Move.MOVE_PATTERN.pattern(), this::doMove)
     };
 
@@ -206,12 +296,14 @@ final class Controller {
 
     /** Command "new". */
     private void doNew(Matcher unused) {
+        stopPlayers();
         _board.init();
         _winner = null;
     }
 
     /** Command "manual <color>", where <color> is COLOR.group(1). */
     private void doManual(Matcher color) {
+        stopPlayers();
         switch (color.group(1)) {
         case "black":
             _black = _manualPlayerTemplate.create(BLACK, this);
@@ -225,14 +317,18 @@ final class Controller {
         _view.update(this);
     }
 
-    /** Command "auto <color>", where <color> is COLOR.group(1). */
+    /** Command "auto <color> [mcts]", where <color> is COLOR.group(1).
+     *  The player is an MCTS player if COLOR.group(2) is present. */
     private void doAuto(Matcher color) {
+        stopPlayers();
+        Player template =
+            color.group(2) == null ? _autoPlayerTemplate : MCTS_TEMPLATE;
         switch (color.group(1)) {
         case "black":
-            _black = _autoPlayerTemplate.create(BLACK, this);
+            _black = template.create(BLACK, this);
             break;
         case "white":
-            _white = _autoPlayerTemplate.create(WHITE, this);
+            _white = template.create(WHITE, this);
             break;
         default:
             assert false;
@@ -244,6 +340,7 @@ final class Controller {
      *  The contents of the square are modified:
      *  EMPTY -> WHITE -> KING -> BLACK .< ENPTY". Clear Undo information. */
     private void doToggle(Matcher mat) {
+        stopPlayers();
         Square sq = sq(mat.group(1));
         Piece piece;
         switch (_board.get(sq)) {
@@ -259,6 +356,7 @@ final class Controller {
 
     /** Command "quit". */
     private void doQuit(Matcher unused) {
+        stopPlayers();
         _playing = false;
     }
 
@@ -280,18 +378,151 @@ final class Controller {
         }
     }
 
+    /** Command "time MS" where MS, the first captured group of MAT, is the
+     *  number of milliseconds AIs may spend on each move (0 for no
+     *  limit, which requires a node limit). */
+    private void doTime(Matcher mat) {
+        long millis;
+        try {
+            millis = Long.parseLong(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        checkLimits(millis, _searchNodes);
+        _searchTime = millis;
+    }
+
+    /** Command "depth N" where N, the first captured group of MAT, is the
+     *  maximum number of levels AIs may search. */
+    private void doDepth(Matcher mat) {
+        int depth;
+        try {
+            depth = Integer.parseInt(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        if (depth == 0) {
+            throw error("depth must be positive");
+        }
+        _searchDepth = depth;
+    }
+
+    /** Command "nodes N" where N, the first captured group of MAT, is the
+     *  number of positions AIs may visit on each move (0 for no limit,
+     *  which requires a time limit). */
+    private void doNodes(Matcher mat) {
+        long nodes;
+        try {
+            nodes = Long.parseLong(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        checkLimits(_searchTime, nodes);
+        _searchNodes = nodes;
+    }
+
+    /** Check that a time limit of MILLIS milliseconds and a limit of NODES
+     *  positions (0 for none) leave AIs some limit on each move.  The
+     *  depth limit does not count, since it does not bound the searches
+     *  of MCTS players. */
+    private void checkLimits(long millis, long nodes) {
+        if (millis == 0 && nodes == 0) {
+            throw error("AIs need a time or a node limit");
+        }
+    }
+
     /** Execute a move command matched in MAT. */
     private void doMove(Matcher mat) {
         _board.makeMove(Move.mv(mat.group(0)));
         if (_winner == null) {
             _winner = _board.winner();
             if (_winner != null) {
+                stopPlayers();
                 _view.update(this);
                 _reporter.reportNote("%s wins.", _winner.toName());
             }
         }
     }
 
+    /** Command "perft N [divide]", where N is the first group of MAT: count
+     *  the move paths of length N from the current position, reporting the
+     *  count for each legal move if the second group is present. */
+    private void doPerft(Matcher mat) {
+        int depth;
+        try {
+            depth = Integer.parseInt(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        Perft perft = new Perft(new Board(_board));
+        long start = System.nanoTime(), nodes;
+        if (mat.group(2) != null) {
+            nodes = 0;
+            for (Map.Entry<Move, Long> e : perft.divide(depth).entrySet()) {
+                _reporter.reportNote("%s: %d", e.getKey(), e.getValue());
+                nodes += e.getValue();
+            }
+        } else {
+            nodes = perft.count(depth);
+        }
+        _reporter.reportNote("%s",
+                             Perft.report(depth, nodes,
+                                          System.nanoTime() - start));
+    }
+
+    /** Command "stats": report what the automated players did to find
+     *  their last moves. */
+    private void doStats(Matcher unused) {
+        boolean reported = false;
+        for (Piece side : new Piece[] { WHITE, BLACK }) {
+            String stats = (side == WHITE ? _white : _black).stats();
+            if (stats != null) {
+                _reporter.reportNote("%s: %s", side.toName(), stats);
+                reported = true;
+            }
+        }
+        if (!reported) {
+            _reporter.reportNote("No search statistics.");
+        }
+    }
+
+    /** Command "ponder on|off", where the first group of MAT says whether
+     *  AIs may search on their (manual) opponents' time. */
+    private void doPonder(Matcher mat) {
+        _ponder = mat.group(1).equals("on");
+        if (!_ponder) {
+            stopPlayers();
+        }
+    }
+
+    /** Stop any background work by the players, as when the game or the
+     *  players change. */
+    private void stopPlayers() {
+        _white.stop();
+        _black.stop();
+    }
+
+    /** Command "<feature> on|off", where <feature>, the first group of MAT,
+     *  is one of the selective-search features of AIs (null-move pruning,
+     *  late-move reductions, or futility pruning), and the second group
+     *  says whether to enable it. */
+    private void doPruning(Matcher mat) {
+        boolean on = mat.group(2).equals("on");
+        switch (mat.group(1)) {
+        case "nullmove":
+            _nullMove = on;
+            break;
+        case "lmr":
+            _lmr = on;
+            break;
+        case "futility":
+            _futility = on;
+            break;
+        default:
+            assert false;
+        }
+    }
+
     /** Dump the contents of the board on standard output. */
     private void doDump(Matcher unused) {
         System.out.printf("===%n%s===%n", _board);
@@ -300,6 +531,7 @@ final class Controller {
     /** Undo back to before my last move, if there was one (otherwise does
      *  nothing). */
     private void doUndo(Matcher unused) {
+        stopPlayers();
         if (_board.moveCount() > 1) {
             _board.undo();
             _board.undo();
@@ -311,6 +543,46 @@ final class Controller {
     /** The board. */
     private Board _board = new Board();
 
+    /** Default time limit for AI moves, in milliseconds.  AI moves made
+     *  under it depend on the speed and load of the machine. */
+    static final long DEFAULT_SEARCH_TIME = 500;
+
+    /** Default limit on positions searched for AI moves when testing (see
+     *  setTesting). */
+    static final long DEFAULT_TESTING_NODES = 50000;
+
+    /** Default size of the transposition table, in megabytes. */
+    static final int DEFAULT_TABLE_SIZE = 16;
+
+    /** Transposition table shared by AIs. */
+    private TranspositionTable _table =
+        new TranspositionTable(DEFAULT_TABLE_SIZE);
+
+    /** Default size of the evaluation cache in megabytes. */
+    static final int DEFAULT_EVAL_CACHE_SIZE = 4;
+
+    /** Evaluation cache shared by AIs. */
+    private EvalCache _evalCache = new EvalCache(DEFAULT_EVAL_CACHE_SIZE);
+
+    /** Number of threads AIs search on. */
+    private int _threads = 1;
+
+    /** True iff AIs may ponder. */
+    private boolean _ponder;
+
+    /** True iff AIs may use null-move pruning, late-move reductions, and
+     *  futility pruning, respectively. */
+    private boolean _nullMove = true, _lmr = true, _futility = true;
+
+    /** Maximum search depth for AI moves. */
+    private int _searchDepth = Integer.MAX_VALUE;
+
+    /** Time limit for AI moves, in milliseconds, or 0 for none. */
+    private long _searchTime = DEFAULT_SEARCH_TIME;
+
+    /** Limit on positions searched for AI moves, or 0 for none. */
+    private long _searchNodes;
+
     /** The winning side of the current game. */
     private Piece _winner;
 
@@ -340,6 +612,10 @@ final class Controller {
     /** The current templates for manual and automated players. */
     private Player _autoPlayerTemplate, _manualPlayerTemplate;
 
+    /** The template for automated players that use Monte Carlo tree
+     *  search ("auto <color> mcts"). */
+    private static final Player MCTS_TEMPLATE = new MCTS();
+
     /** Reporter for messages and errors. */
     private Reporter _reporter;
 
@@ -0,0 +1,77 @@
+package tablut;
+
+import java.util.Arrays;
+
+/** A fixed-size, direct-mapped table of static evaluations (see
+ *  AI.staticScore), indexed by position hash key (see Board.hashKey).  A
+ *  new entry always replaces the one in its slot.
+ *
+ *  As in TranspositionTable, each slot stores its key XORed with its data,
+ *  so that a slot read while another thread is writing it fails to match.
+ *  The table therefore needs no locking and may be shared by the threads
+ *  of a search.
+ *  @author Fourth Teerakapibal
+ */
+class EvalCache {
+
+    /** Value returned by probe for a key with no entry. */
+    static final int NONE = Integer.MIN_VALUE;
+
+    /** Number of bytes used by each entry. */
+    static final int ENTRY_BYTES = 2 * Long.BYTES;
+
+    /** A cache occupying about MEGABYTES megabytes (at least one entry).
+     *  The number of entries is a power of two. */
+    EvalCache(int megabytes) {
+        long entries = ((long) megabytes << 20) / ENTRY_BYTES;
+        int size = 1;
+        while ((long) size * 2 <= entries && size < MAX_ENTRIES) {
+            size *= 2;
+        }
+        _mask = size - 1;
+        _checks = new long[size];
+        _data = new long[size];
+    }
+
+    /** Return the number of entries I can hold. */
+    int capacity() {
+        return _data.length;
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_checks, 0L);
+        Arrays.fill(_data, 0L);
+    }
+
+    /** Return the evaluation stored for KEY, or NONE if there is none. */
+    int probe(long key) {
+        int slot = (int) key & _mask;
+        long data = _data[slot];
+        if ((_checks[slot] ^ data) == key && data != 0) {
+            return (int) data;
+        }
+        return NONE;
+    }
+
+    /** Record that the position with hash KEY evaluates to VALUE. */
+    void store(long key, int value) {
+        int slot = (int) key & _mask;
+        long data = (value & 0xffffffffL) | FILLED;
+        _data[slot] = data;
+        _checks[slot] = key ^ data;
+    }
+
+    /** Bit set in the data of every entry, so that no entry is 0. */
+    private static final long FILLED = 1L << 32;
+
+    /** Largest number of entries in a cache. */
+    private static final int MAX_ENTRIES = 1 << 30;
+
+    /** Mask selecting the bits of a key that determine its slot. */
+    private final int _mask;
+    /** For each slot, its key XORed with its data. */
+    private final long[] _checks;
+    /** For each slot, its evaluation with FILLED set (0 if empty). */
+    private final long[] _data;
+}
@@ -0,0 +1,283 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.util.Arrays;
+
+import static tablut.Piece.*;
+import static tablut.Square.*;
+import static tablut.Utils.error;
+
+/** The terms of the static evaluation of a Board (see AI.staticScore),
+ *  kept up to date by the Board as pieces are placed and removed, so that
+ *  evaluating a position takes only a few reads.  The terms are the
+ *  material, the sum of the piece-square values of the pieces, and the
+ *  numbers of black and white pieces orthogonally adjacent to the king.
+ *  Values are from white's point of view.
+ *
+ *  The evaluation is linear in a vector of weights (see features), which
+ *  may be replaced by tuned ones (see setWeights and Tuner).
+ *  @author Fourth Teerakapibal
+ */
+class EvalState {
+
+    /** Number of distinct distances of a square from the edge. */
+    static final int EDGE_DISTANCES = (BOARD_SIZE + 1) / 2;
+
+    /** Number of distinct values of Board.escapeDistance. */
+    static final int ESCAPE_DISTANCES = Board.MAX_ESCAPE_DISTANCE + 2;
+
+    /** Indices of the weights in a weight vector: the values of a white
+     *  soldier and a black piece, of the king and of each black piece d
+     *  squares from the edge (KING_EDGE + d and BLACK_EDGE + d), of each
+     *  black and white piece next to the king, and of the king's being d
+     *  moves from the edge with one route there (ESCAPE + d) and with
+     *  each other route (ESCAPE_ROUTE + d). */
+    static final int
+        WHITE_MATERIAL = 0,
+        BLACK_MATERIAL = 1,
+        KING_EDGE = 2,
+        BLACK_EDGE = KING_EDGE + EDGE_DISTANCES,
+        KING_ATTACKER = BLACK_EDGE + EDGE_DISTANCES,
+        KING_DEFENDER = KING_ATTACKER + 1,
+        ESCAPE = KING_DEFENDER + 1,
+        ESCAPE_ROUTE = ESCAPE + ESCAPE_DISTANCES,
+        NUM_WEIGHTS = ESCAPE_ROUTE + ESCAPE_DISTANCES;
+
+    /** The weights used unless others are set, indexed as above. */
+    static final int[] DEFAULT_WEIGHTS = {
+        150, -100,
+        0, 40, 20, 8, 0,
+        -4, -8, 0, 0, 0,
+        -25, 5,
+        0, 250, 60, 15, 0,
+        0, 200, 20, 4, 0
+    };
+
+    /** WEIGHT_NAMES[i] is the name of weight #i in a weight file. */
+    static final String[] WEIGHT_NAMES = new String[NUM_WEIGHTS];
+
+    /** The most escape routes counted. */
+    static final int MAX_ESCAPE_ROUTES = 4;
+
+    /** MATERIAL[p] is the value of a Piece with ordinal p. */
+    static final int[] MATERIAL = new int[Piece.values().length];
+
+    /** PLACEMENT[p][c] is the value of a Piece with ordinal p on a square
+     *  of class c (see SQUARE_CLASS). */
+    static final int[][] PLACEMENT = new int[MATERIAL.length][];
+
+    /** Number of classes of squares with the same values.  Squares that
+     *  are reflections of each other across the middle row or column or
+     *  a diagonal are in the same class. */
+    static final int SQUARE_CLASSES = 15;
+
+    /** SQUARE_CLASS[k] is the class of the square with index K, from 0
+     *  for the corners to SQUARE_CLASSES - 1 for the throne. */
+    static final int[] SQUARE_CLASS = new int[NUM_SQUARES];
+
+    /** EDGE_DISTANCE[c] is the number of squares between a square of class
+     *  c and the nearest edge. */
+    static final int[] EDGE_DISTANCE = new int[SQUARE_CLASSES];
+
+    /** The current weights, indexed as DEFAULT_WEIGHTS. */
+    private static final int[] WEIGHTS = new int[NUM_WEIGHTS];
+
+    static {
+        for (int k = 0; k < NUM_SQUARES; k += 1) {
+            Square sq = sq(k);
+            int c = Math.min(sq.col(), BOARD_SIZE - 1 - sq.col()),
+                r = Math.min(sq.row(), BOARD_SIZE - 1 - sq.row());
+            int near = Math.min(c, r), far = Math.max(c, r);
+            int cls = near * 5 - near * (near - 1) / 2 + far - near;
+            SQUARE_CLASS[k] = cls;
+            EDGE_DISTANCE[cls] = near;
+        }
+        for (int p = 0; p < MATERIAL.length; p += 1) {
+            PLACEMENT[p] = new int[SQUARE_CLASSES];
+        }
+        WEIGHT_NAMES[WHITE_MATERIAL] = "white";
+        WEIGHT_NAMES[BLACK_MATERIAL] = "black";
+        WEIGHT_NAMES[KING_ATTACKER] = "kingAttacker";
+        WEIGHT_NAMES[KING_DEFENDER] = "kingDefender";
+        for (int d = 0; d < EDGE_DISTANCES; d += 1) {
+            WEIGHT_NAMES[KING_EDGE + d] = "kingEdge" + d;
+            WEIGHT_NAMES[BLACK_EDGE + d] = "blackEdge" + d;
+        }
+        for (int d = 0; d < ESCAPE_DISTANCES; d += 1) {
+            WEIGHT_NAMES[ESCAPE + d] = "escape" + d;
+            WEIGHT_NAMES[ESCAPE_ROUTE + d] = "escapeRoute" + d;
+        }
+        setWeights(DEFAULT_WEIGHTS);
+    }
+
+    /** Return a copy of the current weights. */
+    static int[] weights() {
+        return WEIGHTS.clone();
+    }
+
+    /** Use WEIGHTS (indexed as DEFAULT_WEIGHTS) from now on.  Boards keep
+     *  the terms computed with the old weights until they are next
+     *  initialized, so this should be called before any are created. */
+    static void setWeights(int[] weights) {
+        if (weights.length != NUM_WEIGHTS) {
+            throw error("wrong number of weights");
+        }
+        System.arraycopy(weights, 0, WEIGHTS, 0, NUM_WEIGHTS);
+        MATERIAL[WHITE.ordinal()] = weights[WHITE_MATERIAL];
+        MATERIAL[BLACK.ordinal()] = weights[BLACK_MATERIAL];
+        for (int cls = 0; cls < SQUARE_CLASSES; cls += 1) {
+            int dist = EDGE_DISTANCE[cls];
+            PLACEMENT[KING.ordinal()][cls] = weights[KING_EDGE + dist];
+            PLACEMENT[BLACK.ordinal()][cls] = weights[BLACK_EDGE + dist];
+        }
+    }
+
+    /** Return the weights read from IN, which contains lines of the form
+     *  "NAME VALUE", NAME being one of WEIGHT_NAMES ('#' starts a
+     *  comment).  Weights not mentioned have their default values. */
+    static int[] readWeights(Reader in) throws IOException {
+        int[] weights = DEFAULT_WEIGHTS.clone();
+        BufferedReader lines = new BufferedReader(in);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.replaceFirst("#.*", "").trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            int i = Arrays.asList(WEIGHT_NAMES).indexOf(fields[0]);
+            if (fields.length != 2 || i < 0
+                || !fields[1].matches("-?\\d{1,9}")) {
+                throw error("bad weight line: %s", line);
+            }
+            weights[i] = Integer.parseInt(fields[1]);
+        }
+        return weights;
+    }
+
+    /** Write WEIGHTS to OUT in the form read by readWeights. */
+    static void writeWeights(int[] weights, PrintWriter out) {
+        for (int i = 0; i < NUM_WEIGHTS; i += 1) {
+            out.printf("%s %d%n", WEIGHT_NAMES[i], weights[i]);
+        }
+    }
+
+    /** Set FEATURES[0 .. NUM_WEIGHTS-1] to the features of BOARD,
+     *  computed afresh, so that their sum weighted by the current weights
+     *  is the score of its evaluation state plus the escapeValue of its
+     *  king. */
+    static void features(Board board, int[] features) {
+        Arrays.fill(features, 0, NUM_WEIGHTS, 0);
+        for (int k = 0; k < NUM_SQUARES; k += 1) {
+            int dist = EDGE_DISTANCE[SQUARE_CLASS[k]];
+            switch (board.get(sq(k))) {
+            case WHITE:
+                features[WHITE_MATERIAL] += 1;
+                break;
+            case BLACK:
+                features[BLACK_MATERIAL] += 1;
+                features[BLACK_EDGE + dist] += 1;
+                break;
+            case KING:
+                features[KING_EDGE + dist] += 1;
+                break;
+            default:
+                break;
+            }
+        }
+        EvalState eval = board.evalState();
+        features[KING_ATTACKER] = eval.kingAttackers();
+        features[KING_DEFENDER] = eval.kingDefenders();
+        int distance = board.escapeDistance(),
+            routes = board.escapeRoutes();
+        if (routes > 0) {
+            features[ESCAPE + distance] = 1;
+            features[ESCAPE_ROUTE + distance] =
+                Math.min(routes, MAX_ESCAPE_ROUTES) - 1;
+        }
+    }
+
+    /** Return the value of the king's being DISTANCE moves from the edge
+     *  with ROUTES ways to reach it. */
+    static int escapeValue(int distance, int routes) {
+        if (routes == 0) {
+            return 0;
+        }
+        return WEIGHTS[ESCAPE + distance] + WEIGHTS[ESCAPE_ROUTE + distance]
+            * (Math.min(routes, MAX_ESCAPE_ROUTES) - 1);
+    }
+
+    /** Set me to the terms for an empty board. */
+    void clear() {
+        _material = _placement = 0;
+        _kingAttackers = _kingDefenders = 0;
+    }
+
+    /** Set me to a copy of MODEL. */
+    void copy(EvalState model) {
+        _material = model._material;
+        _placement = model._placement;
+        _kingAttackers = model._kingAttackers;
+        _kingDefenders = model._kingDefenders;
+    }
+
+    /** Account for the replacement of OLD by P on the square with index
+     *  INDEX, other than its effect on the pieces next to the king. */
+    void replace(Piece old, Piece p, int index) {
+        int cls = SQUARE_CLASS[index];
+        _material += MATERIAL[p.ordinal()] - MATERIAL[old.ordinal()];
+        _placement += PLACEMENT[p.ordinal()][cls]
+            - PLACEMENT[old.ordinal()][cls];
+    }
+
+    /** Account for the replacement of OLD by P on a square next to the
+     *  king. */
+    void replaceNextToKing(Piece old, Piece p) {
+        _kingAttackers += (p == BLACK ? 1 : 0) - (old == BLACK ? 1 : 0);
+        _kingDefenders += (p == WHITE ? 1 : 0) - (old == WHITE ? 1 : 0);
+    }
+
+    /** Record that there are ATTACKERS black and DEFENDERS white pieces
+     *  next to the king. */
+    void setKingNeighbors(int attackers, int defenders) {
+        _kingAttackers = attackers;
+        _kingDefenders = defenders;
+    }
+
+    /** Return the value of the material. */
+    int material() {
+        return _material;
+    }
+
+    /** Return the sum of the piece-square values. */
+    int placement() {
+        return _placement;
+    }
+
+    /** Return the number of black pieces next to the king. */
+    int kingAttackers() {
+        return _kingAttackers;
+    }
+
+    /** Return the number of white pieces next to the king. */
+    int kingDefenders() {
+        return _kingDefenders;
+    }
+
+    /** Return the sum of the terms, weighted. */
+    int score() {
+        return _material + _placement
+            + WEIGHTS[KING_ATTACKER] * _kingAttackers
+            + WEIGHTS[KING_DEFENDER] * _kingDefenders;
+    }
+
+    /** Sum of MATERIAL over the pieces on the board. */
+    private int _material;
+    /** Sum of PLACEMENT over the pieces on the board. */
+    private int _placement;
+    /** Numbers of black and white pieces next to the king. */
+    private int _kingAttackers, _kingDefenders;
+}
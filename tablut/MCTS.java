@@ -0,0 +1,364 @@
+package tablut;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.Math.*;
+
+import static tablut.Piece.*;
+
+/** A Player that automatically generates moves by Monte Carlo tree search
+ *  (UCT): it repeatedly follows the most promising line through a tree of
+ *  positions, extends the tree at its end, finishes the game from there
+ *  with random moves (a playout), and credits the result to each position
+ *  along the line.  The move played is the one most often followed.
+ *
+ *  Several threads may grow the same tree at once.  A thread counts a
+ *  visit to each node as it passes, before the result is known, so that
+ *  the others, seeing an apparent loss there, tend to follow other lines
+ *  (a "virtual loss").  Each thread plays out games on its own board with
+ *  its own random-number generator, without allocating storage.  The part
+ *  of the tree below the position reached after my move and my opponent's
+ *  reply is kept for my next move.
+ *  @author Fourth Teerakapibal
+ */
+class MCTS extends Player {
+
+    /** A new MCTS player with no piece or controller (intended to produce
+     *  a template). */
+    MCTS() {
+        this(null, null);
+    }
+
+    /** A new MCTS player playing PIECE under control of CONTROLLER. */
+    MCTS(Piece piece, Controller controller) {
+        super(piece, controller);
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        return new MCTS(piece, controller);
+    }
+
+    @Override
+    String myMove() {
+        Move move = findMove();
+        _controller.logComment("%s", stats());
+        _controller.reportMove(move);
+        return move.toString();
+    }
+
+    @Override
+    boolean isManual() {
+        return false;
+    }
+
+    @Override
+    String stats() {
+        if (_threads == 0) {
+            return null;
+        }
+        double secs = Math.max(_nanos, 1) * 1e-9;
+        return String.format("%d playouts in %.3f s, %.0f playouts/s,"
+                             + " %d thread(s)", _playouts.get(), secs,
+                             _playouts.get() / secs, _threads);
+    }
+
+    /** Return a move for me from the current position, assuming there is
+     *  a move, searching within the limits set in my controller. */
+    private Move findMove() {
+        return findMove(new Board(board()), _controller.searchTime(),
+                        _controller.searchNodes(), _controller.threads(),
+                        _controller.randInt(Integer.MAX_VALUE));
+    }
+
+    /** Return a move for the player to move in BOARD, or null if there is
+     *  none, found by searching for MILLIS milliseconds or until PLAYOUTS
+     *  games have been played out (no limit if <= 0; at least one of the
+     *  limits must be positive) on THREADS threads.  The random-number
+     *  generators of the threads are seeded from SEED.  If BOARD follows
+     *  the position for which I last found a move by that move and one
+     *  other, the tree grown then for BOARD is reused.  BOARD is not
+     *  modified. */
+    Move findMove(Board board, long millis, long playouts, int threads,
+                  long seed) {
+        assert millis > 0 || playouts > 0;
+        long start = System.nanoTime();
+        Node root = reusedRoot(board);
+        _stopTime = millis > 0 ? System.nanoTime() + millis * 1000000
+            : Long.MAX_VALUE;
+        _playoutLimit = playouts > 0 ? playouts : Long.MAX_VALUE;
+        _playouts.set(0);
+        Worker main = new Worker(board, seed);
+        if (root.children == null) {
+            main.expand(root);
+        }
+        if (root.children.length == 0) {
+            return null;
+        }
+        Thread[] helpers = new Thread[threads - 1];
+        for (int i = 1; i < threads; i += 1) {
+            Worker worker = new Worker(board, seed + i * SEED_STEP);
+            helpers[i - 1] = new Thread(() -> worker.search(root));
+            helpers[i - 1].setDaemon(true);
+            helpers[i - 1].start();
+        }
+        main.search(root);
+        for (Thread helper : helpers) {
+            try {
+                helper.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        _nanos = System.nanoTime() - start;
+        _threads = threads;
+
+        Node best = root.children[0];
+        for (Node child : root.children) {
+            if (child.visits > best.visits) {
+                best = child;
+            }
+        }
+        _root = best;
+        _rootBoard = new Board(board);
+        _rootBoard.makeMove(best.move);
+        return Move.mv(best.move);
+    }
+
+    /** Return the number of playouts made by the last call to findMove. */
+    long playouts() {
+        return _playouts.get();
+    }
+
+    /** Return the node of my saved tree for the position BOARD, if BOARD
+     *  is reached from the position after my last move by a move in that
+     *  tree, or else a new root node. */
+    private Node reusedRoot(Board board) {
+        Node root = null;
+        if (_root != null && _root.children != null
+            && _rootBoard.moveCount() + 1 == board.moveCount()) {
+            for (Node child : _root.children) {
+                _rootBoard.makeMove(child.move);
+                boolean found = _rootBoard.hashKey() == board.hashKey()
+                    && _rootBoard.encodedBoard().equals(board.encodedBoard());
+                _rootBoard.undo();
+                if (found) {
+                    root = child;
+                    break;
+                }
+            }
+        }
+        _root = null;
+        _rootBoard = null;
+        return root == null ? new Node(0) : root;
+    }
+
+    /** A node of the search tree, standing for the position reached by
+     *  a move from the position of its parent. */
+    private static final class Node {
+        /** A node for the position reached by MOVE (in the compact form of
+         *  Move.pack, or 0 for the root). */
+        Node(int move) {
+            this.move = move;
+        }
+
+        /** The move leading to my position. */
+        final int move;
+        /** The nodes for the positions after each legal move from mine, or
+         *  null if not yet expanded. */
+        volatile Node[] children;
+        /** Number of times my position has been visited, including
+         *  visits whose playouts have not yet finished. */
+        volatile int visits;
+        /** Twice the number of playouts through my position won by the
+         *  player who made my move, plus the number drawn. */
+        volatile int score;
+    }
+
+    /** Atomic updaters for Node.visits and Node.score. */
+    private static final AtomicIntegerFieldUpdater<Node>
+        VISITS = AtomicIntegerFieldUpdater.newUpdater(Node.class, "visits"),
+        SCORE = AtomicIntegerFieldUpdater.newUpdater(Node.class, "score");
+
+    /** The state of one thread growing the tree: its own board and
+     *  buffers and its random-number generator. */
+    private final class Worker {
+        /** A worker for the position BOARD (which is copied), whose
+         *  random-number generator is seeded from SEED. */
+        Worker(Board board, long seed) {
+            _board = new Board(board);
+            _random = seed * 0x9E3779B97F4A7C15L + 1;
+            if (_random == 0) {
+                _random = 1;
+            }
+        }
+
+        /** Grow the tree rooted at ROOT, for my board's position, until
+         *  time or playouts run out. */
+        void search(Node root) {
+            do {
+                iterate(root);
+            } while (_playouts.incrementAndGet() < _playoutLimit
+                     && System.nanoTime() < _stopTime);
+        }
+
+        /** Make one pass through the tree from ROOT: select a line, expand
+         *  its last node if it has been visited often enough, play the
+         *  game out from there, and credit the result along the line.  My
+         *  board is restored afterwards. */
+        private void iterate(Node root) {
+            Node node = root;
+            VISITS.incrementAndGet(node);
+            int depth = 0;
+            _path[0] = root;
+            while (_board.winner() == null && depth + 1 < MAX_DEPTH) {
+                Node[] children = node.children;
+                if (children == null) {
+                    if (node.visits <= EXPAND_VISITS) {
+                        break;
+                    }
+                    children = expand(node);
+                }
+                node = select(node, children);
+                VISITS.incrementAndGet(node);
+                _board.makeMove(node.move);
+                depth += 1;
+                _path[depth] = node;
+            }
+            Piece winner = _board.winner();
+            if (winner == null) {
+                winner = playout();
+            }
+            Piece mover = _board.turn();
+            for (int d = depth; d >= 0; d -= 1) {
+                mover = mover.opponent();
+                if (winner == mover) {
+                    SCORE.addAndGet(_path[d], 2);
+                } else if (winner == EMPTY) {
+                    SCORE.addAndGet(_path[d], 1);
+                }
+                if (d > 0) {
+                    _board.undo();
+                }
+            }
+        }
+
+        /** Add child nodes for the legal moves from my board, whose
+         *  position is that of NODE, to NODE, unless another thread has,
+         *  and return them. */
+        private Node[] expand(Node node) {
+            synchronized (node) {
+                if (node.children == null) {
+                    int n = _board.legalMoves(_board.turn(), _moves);
+                    Node[] children = new Node[n];
+                    for (int i = 0; i < n; i += 1) {
+                        children[i] = new Node(_moves[i]);
+                    }
+                    node.children = children;
+                }
+                return node.children;
+            }
+        }
+
+        /** Return the member of CHILDREN, the children of NODE, with the
+         *  highest upper confidence bound on its value, preferring the
+         *  first unvisited one. */
+        private Node select(Node node, Node[] children) {
+            double logVisits = log(max(node.visits, 1));
+            Node best = children[0];
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (Node child : children) {
+                int visits = child.visits;
+                if (visits == 0) {
+                    return child;
+                }
+                double value = child.score / (2.0 * visits)
+                    + EXPLORATION * sqrt(logVisits / visits);
+                if (value > bestValue) {
+                    best = child;
+                    bestValue = value;
+                }
+            }
+            return best;
+        }
+
+        /** Play random moves from my board until the game is won or
+         *  MAX_PLAYOUT moves have been made, then restore the board, and
+         *  return the winner.  If there is none by then, the side ahead by
+         *  AI.staticScore wins, and if neither is ahead, returns EMPTY. */
+        private Piece playout() {
+            int n;
+            Piece winner = null;
+            for (n = 0; n < MAX_PLAYOUT; n += 1) {
+                winner = _board.winner();
+                if (winner != null) {
+                    break;
+                }
+                int k = _board.legalMoves(_board.turn(), _moves);
+                _board.makeMove(_moves[nextInt(k)]);
+            }
+            if (winner == null) {
+                int score = AI.staticScore(_board);
+                winner = score > 0 ? WHITE : score < 0 ? BLACK : EMPTY;
+            }
+            for (; n > 0; n -= 1) {
+                _board.undo();
+            }
+            return winner;
+        }
+
+        /** Return a pseudo-random integer uniformly distributed in
+         *  0 .. N-1, where N > 0, from an xorshift generator. */
+        private int nextInt(int n) {
+            long x = _random;
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+            _random = x;
+            return (int) (((x >>> 32) * n) >>> 32);
+        }
+
+        /** My copy of the position being searched. */
+        private final Board _board;
+        /** Buffer for generated moves. */
+        private final int[] _moves = new int[Board.MAX_MOVES];
+        /** _path[d] is the node at depth d of the current line. */
+        private final Node[] _path = new Node[MAX_DEPTH];
+        /** The state of my random-number generator (never 0). */
+        private long _random;
+    }
+
+    /** The greatest depth of a line through the tree. */
+    private static final int MAX_DEPTH = 256;
+
+    /** The most moves made in a playout. */
+    private static final int MAX_PLAYOUT = 256;
+
+    /** A node is expanded once it has been visited more than this many
+     *  times. */
+    private static final int EXPAND_VISITS = 1;
+
+    /** Weight of the exploration term of the upper confidence bound. */
+    private static final double EXPLORATION = 1.0;
+
+    /** Difference between the seeds of successive threads. */
+    private static final long SEED_STEP = 0x2545F4914F6CDD1DL;
+
+    /** The node for the position after my last move, or null. */
+    private Node _root;
+    /** The position after my last move, or null. */
+    private Board _rootBoard;
+
+    /** Value of System.nanoTime() at which the current search stops. */
+    private volatile long _stopTime;
+    /** Number of playouts the current search may make. */
+    private volatile long _playoutLimit;
+    /** Duration of the last search in nanoseconds. */
+    private long _nanos;
+    /** Number of threads used by the last search (0 if none). */
+    private int _threads;
+    /** Number of playouts made so far by the current search. */
+    private final AtomicLong _playouts = new AtomicLong();
+}
@@ -15,15 +15,47 @@ import ucb.util.CommandArgs;
  */
 public class Main {
 
-    /** The main program.  ARGS may contain the option --display. */
+    /** The main program.  ARGS may contain the options --display,
+     *  --testing (AI moves limited by positions searched rather than by
+     *  time, so that they are reproducible; see Controller.setTesting),
+     *  --hash=MB (the size of the AI's transposition table in megabytes),
+     *  --evalcache=MB (the size of its evaluation cache in megabytes),
+     *  --threads=N (the number of threads the AI searches on),
+     *  --weights=FILE (evaluation weights written by tablut.Tuner), and
+     *  --network=FILE (a network to evaluate positions with instead; see
+     *  Network). */
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--display --testing --strict --log={0,1} --={0,2}",
+            new CommandArgs("--display --testing --strict --log={0,1}"
+                            + " --hash={0,1} --evalcache={0,1}"
+                            + " --threads={0,1} --weights={0,1}"
+                            + " --network={0,1} --={0,2}",
                             args);
-        if (!options.ok()) {
+        if (!options.ok() || !sizeOption(options, "--hash")
+            || !sizeOption(options, "--evalcache")
+            || !sizeOption(options, "--threads")) {
             System.err.println("Usage: java tablut.Main [--display]"
-                               + " [--log=FILE] [--strict] [INPUT [OUTPUT]]");
+                               + " [--log=FILE] [--strict] [--hash=MB]"
+                               + " [--evalcache=MB] [--threads=N]"
+                               + " [--weights=FILE] [--network=FILE]"
+                               + " [INPUT [OUTPUT]]");
+            System.exit(1);
+        }
+
+        try {
+            if (options.contains("--weights")) {
+                AI.loadWeights(options.getFirst("--weights"));
+            }
+            if (options.contains("--network")) {
+                AI.loadNetwork(options.getFirst("--network"));
+            }
+        } catch (IOException excp) {
+            System.err.printf("Could not read file: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
             System.exit(1);
         }
 
@@ -63,6 +95,13 @@ public class Main {
 
     }
 
+    /** Return true iff OPTIONS does not contain the option NAME, or its
+     *  value is a positive integer. */
+    private static boolean sizeOption(CommandArgs options, String name) {
+        return !options.contains(name)
+            || options.getFirst(name).matches("0*[1-9]\\d{0,8}");
+    }
+
     /** Return an appropriate Controller as indicated by OPTIONS. */
     private static Controller getController(CommandArgs options) {
         Player manualPlayer;
@@ -96,7 +135,22 @@ public class Main {
             }
         }
 
-        return new Controller(view, log, reporter, manualPlayer,
-                              new AI(), options.contains("--strict"));
+        Controller control =
+            new Controller(view, log, reporter, manualPlayer,
+                           new AI(), options.contains("--strict"));
+        if (options.contains("--hash")) {
+            control.setTableSize(Integer.parseInt(options.getFirst("--hash")));
+        }
+        if (options.contains("--evalcache")) {
+            control.setEvalCacheSize(
+                Integer.parseInt(options.getFirst("--evalcache")));
+        }
+        if (options.contains("--threads")) {
+            control.setThreads(Integer.parseInt(options.getFirst("--threads")));
+        }
+        if (options.contains("--testing")) {
+            control.setTesting();
+        }
+        return control;
     }
 }
@@ -48,6 +48,36 @@ final class Move {
         return MOVES[from.index()][to.index()];
     }
 
+    /** Return the unique Move whose compact encoding (see pack) is
+     *  MOVE. */
+    static Move mv(int move) {
+        return mv(sq(from(move)), sq(to(move)));
+    }
+
+    /** Return the compact integer encoding of the move from the square
+     *  with index FROM to the square with index TO.  Search code uses these
+     *  in place of Move objects to avoid allocation. */
+    static int pack(int from, int to) {
+        return (from << SQUARE_BITS) | to;
+    }
+
+    /** Return the index of the square moved from in the compact encoding
+     *  MOVE. */
+    static int from(int move) {
+        return move >>> SQUARE_BITS;
+    }
+
+    /** Return the index of the square moved to in the compact encoding
+     *  MOVE. */
+    static int to(int move) {
+        return move & ((1 << SQUARE_BITS) - 1);
+    }
+
+    /** Return the compact encoding of this move. */
+    int pack() {
+        return pack(_from.index(), _to.index());
+    }
+
     /** Return the Move denoted by STR, if STR denotes a move with
      *  valid syntax, and null otherwise. */
     static Move mv(String str) {
@@ -109,6 +139,9 @@ final class Move {
         return (_from.index() << 6) + _to.index();
     }
 
+    /** Number of bits used for each square index in a packed move. */
+    private static final int SQUARE_BITS = 7;
+
     /** The cache of all Moves created. */
     private static final Move[][] MOVES = new Move[NUM_SQUARES][NUM_SQUARES];
 
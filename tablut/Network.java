@@ -0,0 +1,267 @@
+package tablut;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static tablut.Piece.*;
+import static tablut.Square.NUM_SQUARES;
+import static tablut.Utils.error;
+
+/** A small neural network that evaluates positions, as an alternative to
+ *  the hand-written evaluation (see AI.staticScore).  Its inputs are one
+ *  feature per (piece, square) pair, on when that piece occupies that
+ *  square.  These feed a layer of hidden units, whose values (the
+ *  accumulator) each Board keeps up to date as pieces are placed and
+ *  removed, by adding and subtracting the weights of the features that
+ *  change.  The output is a weighted sum of the hidden values, each
+ *  clipped to 0 .. ACTIVATION_LIMIT, shifted right to the units of
+ *  staticScore.  Values are from white's point of view.
+ *
+ *  Weights, biases, and accumulators are 16-bit integers; the network's
+ *  weights must be small enough that no accumulator overflows.  The
+ *  arithmetic is done by a Kernel: VectorKernel, which uses the JDK's
+ *  incubating Vector API, if it has been compiled and the
+ *  jdk.incubator.vector module is present (see vector/Makefile), and
+ *  otherwise a scalar one.
+ *  @author Fourth Teerakapibal
+ */
+class Network {
+
+    /** Number of input features. */
+    static final int INPUTS = 3 * NUM_SQUARES;
+
+    /** Upper limit of the value of a hidden unit in the output sum. */
+    static final int ACTIVATION_LIMIT = 127;
+
+    /** First int of a network file. */
+    static final int MAGIC = 0x544e4e31;
+
+    /** A network with HIDDEN hidden units.  Weight #h of input feature f
+     *  (see feature) is INPUTWEIGHTS[f * HIDDEN + h], and BIASES[h] is the
+     *  initial value of hidden unit h.  The output is the sum of
+     *  OUTPUTBIAS and of each clipped hidden value times its weight in
+     *  OUTPUTWEIGHTS, shifted right by OUTPUTSHIFT bits. */
+    Network(int hidden, short[] inputWeights, short[] biases,
+            short[] outputWeights, int outputBias, int outputShift) {
+        if (hidden <= 0 || inputWeights.length != INPUTS * hidden
+            || biases.length != hidden || outputWeights.length != hidden
+            || outputShift < 0 || outputShift > MAX_SHIFT) {
+            throw error("malformed network");
+        }
+        _hidden = hidden;
+        _inputWeights = inputWeights;
+        _biases = biases;
+        _outputWeights = outputWeights;
+        _outputBias = outputBias;
+        _outputShift = outputShift;
+    }
+
+    /** Return the network read from IN, in the form written by write. */
+    static Network read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw error("not a network file");
+        }
+        int hidden = data.readInt(), shift = data.readInt();
+        if (hidden <= 0 || hidden > MAX_HIDDEN) {
+            throw error("bad number of hidden units: %d", hidden);
+        }
+        short[] inputWeights = readShorts(data, INPUTS * hidden),
+            biases = readShorts(data, hidden),
+            outputWeights = readShorts(data, hidden);
+        int outputBias = data.readInt();
+        return new Network(hidden, inputWeights, biases, outputWeights,
+                           outputBias, shift);
+    }
+
+    /** Write me to OUT: MAGIC, the numbers of hidden units and bits of
+     *  output shift, the input weights, biases, and output weights in
+     *  the order of the arrays passed to my constructor, and the output
+     *  bias, all big-endian. */
+    void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(_hidden);
+        data.writeInt(_outputShift);
+        writeShorts(data, _inputWeights);
+        writeShorts(data, _biases);
+        writeShorts(data, _outputWeights);
+        data.writeInt(_outputBias);
+        data.flush();
+    }
+
+    /** Return a network with HIDDEN hidden units and small weights chosen
+     *  pseudo-randomly from SEED (for testing and benchmarking). */
+    static Network random(int hidden, long seed) {
+        Random random = new Random(seed);
+        short[] inputWeights = new short[INPUTS * hidden],
+            biases = new short[hidden], outputWeights = new short[hidden];
+        for (int i = 0; i < inputWeights.length; i += 1) {
+            inputWeights[i] = (short) (random.nextInt(65) - 32);
+        }
+        for (int h = 0; h < hidden; h += 1) {
+            biases[h] = (short) random.nextInt(64);
+            outputWeights[h] = (short) (random.nextInt(129) - 64);
+        }
+        return new Network(hidden, inputWeights, biases, outputWeights, 0,
+                           4);
+    }
+
+    /** Return the network that new Boards use, or null if they use none. */
+    static Network active() {
+        return _active;
+    }
+
+    /** Make new Boards use NETWORK (none if null). */
+    static void setActive(Network network) {
+        _active = network;
+    }
+
+    /** Return the name of the kernel in use. */
+    static String kernelName() {
+        return KERNEL.getClass().getSimpleName();
+    }
+
+    /** Return my number of hidden units, the length of an accumulator. */
+    int hidden() {
+        return _hidden;
+    }
+
+    /** Set ACCUMULATOR to its value for an empty board. */
+    void clear(short[] accumulator) {
+        System.arraycopy(_biases, 0, accumulator, 0, _hidden);
+    }
+
+    /** Update ACCUMULATOR for the replacement of OLD by P on the square
+     *  with index INDEX. */
+    void update(short[] accumulator, Piece old, Piece p, int index) {
+        if (old != EMPTY) {
+            KERNEL.subtract(accumulator, _inputWeights,
+                            feature(old, index) * _hidden);
+        }
+        if (p != EMPTY) {
+            KERNEL.add(accumulator, _inputWeights,
+                       feature(p, index) * _hidden);
+        }
+    }
+
+    /** Return the output for ACCUMULATOR. */
+    int evaluate(short[] accumulator) {
+        return (KERNEL.dot(accumulator, _outputWeights, ACTIVATION_LIMIT)
+                + _outputBias) >> _outputShift;
+    }
+
+    /** Return the number of the input feature for piece P (not EMPTY) on
+     *  the square with index INDEX. */
+    static int feature(Piece p, int index) {
+        return (p.ordinal() - 1) * NUM_SQUARES + index;
+    }
+
+    /** The arithmetic on accumulators and weights.  Implementations must
+     *  have a public constructor with no arguments. */
+    interface Kernel {
+        /** Add WEIGHTS[OFFSET .. OFFSET + ACC.length - 1] to ACC,
+         *  elementwise (with 16-bit wraparound). */
+        void add(short[] acc, short[] weights, int offset);
+
+        /** Subtract WEIGHTS[OFFSET .. OFFSET + ACC.length - 1] from ACC,
+         *  elementwise (with 16-bit wraparound). */
+        void subtract(short[] acc, short[] weights, int offset);
+
+        /** Return the sum over i of ACC[i], limited to 0 .. LIMIT, times
+         *  WEIGHTS[i]. */
+        int dot(short[] acc, short[] weights, int limit);
+    }
+
+    /** A Kernel using ordinary scalar arithmetic. */
+    static final class ScalarKernel implements Kernel {
+        @Override
+        public void add(short[] acc, short[] weights, int offset) {
+            for (int i = 0; i < acc.length; i += 1) {
+                acc[i] += weights[offset + i];
+            }
+        }
+
+        @Override
+        public void subtract(short[] acc, short[] weights, int offset) {
+            for (int i = 0; i < acc.length; i += 1) {
+                acc[i] -= weights[offset + i];
+            }
+        }
+
+        @Override
+        public int dot(short[] acc, short[] weights, int limit) {
+            int sum = 0;
+            for (int i = 0; i < acc.length; i += 1) {
+                sum += Math.min(Math.max(acc[i], 0), limit) * weights[i];
+            }
+            return sum;
+        }
+    }
+
+    /** Return an instance of the class named VECTOR_KERNEL, or a
+     *  ScalarKernel if that cannot be loaded or used. */
+    private static Kernel loadKernel() {
+        try {
+            Kernel kernel = (Kernel) Class.forName(VECTOR_KERNEL)
+                .getConstructor().newInstance();
+            short[] acc = new short[CHECK_LENGTH];
+            Arrays.fill(acc, (short) 1);
+            kernel.add(acc, acc, 0);
+            if (kernel.dot(acc, acc, ACTIVATION_LIMIT) == 4 * CHECK_LENGTH) {
+                return kernel;
+            }
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            /* Fall through to the scalar kernel. */
+        }
+        return new ScalarKernel();
+    }
+
+    /** Return N shorts read from IN. */
+    private static short[] readShorts(DataInputStream in, int n)
+        throws IOException {
+        short[] result = new short[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = in.readShort();
+        }
+        return result;
+    }
+
+    /** Write VALUES to OUT. */
+    private static void writeShorts(DataOutputStream out, short[] values)
+        throws IOException {
+        for (short value : values) {
+            out.writeShort(value);
+        }
+    }
+
+    /** Length of the vectors on which loadKernel checks the vectorized
+     *  kernel. */
+    private static final int CHECK_LENGTH = 67;
+
+    /** Name of the vectorized Kernel class. */
+    private static final String VECTOR_KERNEL = "tablut.VectorKernel";
+
+    /** The kernel used by all networks. */
+    private static final Kernel KERNEL = loadKernel();
+
+    /** Largest number of hidden units and bits of output shift. */
+    private static final int MAX_HIDDEN = 1 << 12, MAX_SHIFT = 24;
+
+    /** The network new Boards use, or null. */
+    private static volatile Network _active;
+
+    /** Number of hidden units. */
+    private final int _hidden;
+    /** Weights of the inputs, biases of the hidden units, weights of the
+     *  hidden units in the output, and bias of the output. */
+    private final short[] _inputWeights, _biases, _outputWeights;
+    private final int _outputBias;
+    /** Number of bits by which the output sum is shifted. */
+    private final int _outputShift;
+}
@@ -0,0 +1,154 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ucb.util.CommandArgs;
+
+import static tablut.Utils.error;
+
+/** Move-path enumeration ("perft") for checking and timing Board's move
+ *  generation.  The perft count of a position at depth D is the number of
+ *  distinct sequences of D legal moves that can be played from it, where
+ *  no moves are possible once the game has been won.
+ *  @author Fourth Teerakapibal
+ */
+class Perft {
+
+    /** A counter that works on (and modifies, but restores) BOARD. */
+    Perft(Board board) {
+        _board = board;
+    }
+
+    /** Return the perft count of my board at DEPTH. */
+    long count(int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        if (_board.winner() != null) {
+            return 0;
+        }
+        if (depth >= _moves.length) {
+            throw error("depth too large");
+        }
+        int[] moves = _moves[depth];
+        int n = _board.legalMoves(_board.turn(), moves);
+        if (depth == 1) {
+            return n;
+        }
+        long total = 0;
+        for (int i = 0; i < n; i += 1) {
+            _board.makeMove(moves[i]);
+            total += count(depth - 1);
+            _board.undo();
+        }
+        return total;
+    }
+
+    /** Return the perft count at DEPTH - 1 of the position after each
+     *  legal move from my board, in move-generation order.  The counts sum
+     *  to count(DEPTH). */
+    Map<Move, Long> divide(int depth) {
+        LinkedHashMap<Move, Long> result = new LinkedHashMap<>();
+        if (depth > 0 && _board.winner() == null) {
+            for (Move move : _board.legalMoves(_board.turn())) {
+                _board.makeMove(move);
+                result.put(move, count(depth - 1));
+                _board.undo();
+            }
+        }
+        return result;
+    }
+
+    /** Return a one-line report of a perft count of NODES at DEPTH that
+     *  took NANOS nanoseconds. */
+    static String report(int depth, long nodes, long nanos) {
+        double secs = Math.max(nanos, 1) * 1e-9;
+        return String.format("perft %d: %d nodes in %.3f s (%.0f nodes/s)",
+                             depth, nodes, secs, nodes / secs);
+    }
+
+    /** Check the perft counts of the initial position listed in the file
+     *  NAME, one "DEPTH COUNT" pair per line ('#' starts a comment).
+     *  Returns true iff all match, reporting each on the standard
+     *  output. */
+    static boolean check(String name) throws IOException {
+        boolean ok = true;
+        try (BufferedReader in = new BufferedReader(new FileReader(name))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.replaceFirst("#.*", "").trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                int depth = Integer.parseInt(fields[0]);
+                long expected = Long.parseLong(fields[1]);
+                long start = System.nanoTime();
+                long nodes = new Perft(new Board()).count(depth);
+                System.out.println(report(depth, nodes,
+                                          System.nanoTime() - start));
+                if (nodes != expected) {
+                    System.out.printf("    expected %d%n", expected);
+                    ok = false;
+                }
+            }
+        }
+        return ok;
+    }
+
+    /** Count move paths from the initial position.  ARGS are either
+     *  [--divide] DEPTH, to report the count at DEPTH (per root move if
+     *  --divide), or --check=FILE, to compare against the reference counts
+     *  in FILE. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--divide --check={0,1} --={0,1}", args);
+        List<String> depths = options.get("--");
+        if (!options.ok()
+            || options.contains("--check") == (depths.size() == 1)) {
+            System.err.println("Usage: java tablut.Perft [--divide] DEPTH"
+                               + " | --check=FILE");
+            System.exit(1);
+        }
+        try {
+            if (options.contains("--check")) {
+                System.exit(check(options.getFirst("--check")) ? 0 : 1);
+            }
+            int depth = Integer.parseInt(depths.get(0));
+            Perft perft = new Perft(new Board());
+            long start = System.nanoTime(), nodes;
+            if (options.contains("--divide")) {
+                nodes = 0;
+                for (Map.Entry<Move, Long> e
+                         : perft.divide(depth).entrySet()) {
+                    System.out.printf("%s: %d%n", e.getKey(), e.getValue());
+                    nodes += e.getValue();
+                }
+            } else {
+                nodes = perft.count(depth);
+            }
+            System.out.println(report(depth, nodes,
+                                      System.nanoTime() - start));
+        } catch (IOException excp) {
+            System.err.printf("Could not read file: %s%n", excp.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Maximum depth supported. */
+    private static final int MAX_DEPTH = 32;
+
+    /** The board whose moves I count. */
+    private final Board _board;
+
+    /** _moves[d] holds the moves generated by count at depth d. */
+    private final int[][] _moves = new int[MAX_DEPTH][Board.MAX_MOVES];
+}
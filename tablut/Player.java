@@ -39,6 +39,17 @@ abstract class Player {
      *  is not null. */
     abstract String myMove();
 
+    /** Return a description of the work I did to find my last move, or
+     *  null if there is none.  Returns null by default. */
+    String stats() {
+        return null;
+    }
+
+    /** Stop any work I am doing in the background, such as thinking on my
+     *  opponent's time.  Does nothing by default. */
+    void stop() {
+    }
+
     /** My Controller. */
     protected Controller _controller;
     /** The Piece I play (WHITE or BLACK). */
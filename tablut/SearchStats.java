@@ -0,0 +1,63 @@
+package tablut;
+
+/** Counts describing one search by an AI, summed over the threads that
+ *  made it (see Searcher.addStats).
+ *  @author Fourth Teerakapibal
+ */
+class SearchStats {
+
+    /** Positions visited, and those visited by quiescence search. */
+    long nodes, qnodes;
+    /** Transposition-table probes, those that found an entry, and those
+     *  that found no entry in a full bucket. */
+    long probes, hits, collisions;
+    /** Evaluation-cache probes, and those that found an entry. */
+    long evalProbes, evalHits;
+    /** Beta cutoffs, and those caused by the first move searched. */
+    long cutoffs, firstCutoffs;
+    /** Nodes visited by the last two complete iterations of the main
+     *  thread's search, the last first. */
+    long lastIterationNodes, prevIterationNodes;
+    /** Depth of the last complete iteration of the main thread's search,
+     *  and the greatest ply reached by any thread. */
+    int depth, selDepth;
+    /** Number of threads. */
+    int threads;
+    /** Duration of the search in nanoseconds. */
+    long nanos;
+
+    /** Return nodes visited per second. */
+    double nodesPerSecond() {
+        return nodes / (Math.max(nanos, 1) * 1e-9);
+    }
+
+    /** Return the effective branching factor: the ratio of the nodes
+     *  visited by the last complete iteration to those visited by the one
+     *  before, or 0 if there were not two. */
+    double branchingFactor() {
+        return prevIterationNodes == 0 ? 0
+            : (double) lastIterationNodes / prevIterationNodes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("depth %d/%d, %d nodes (%d quiescence) in"
+                             + " %.3f s, %.0f nodes/s, %d thread(s);"
+                             + " TT %d probes, %.1f%% hits,"
+                             + " %.1f%% collisions; eval cache %.1f%% hits;"
+                             + " %.1f%% of %d cutoffs on first move;"
+                             + " EBF %.2f",
+                             depth, selDepth, nodes, qnodes, nanos * 1e-9,
+                             nodesPerSecond(), threads, probes,
+                             percent(hits, probes),
+                             percent(collisions, probes),
+                             percent(evalHits, evalProbes),
+                             percent(firstCutoffs, cutoffs), cutoffs,
+                             branchingFactor());
+    }
+
+    /** Return PART as a percentage of WHOLE (0 if WHOLE is 0). */
+    private static double percent(long part, long whole) {
+        return whole == 0 ? 0 : 100.0 * part / whole;
+    }
+}
@@ -0,0 +1,602 @@
+package tablut;
+
+import static java.lang.Math.*;
+
+import static tablut.Piece.*;
+import static tablut.Square.NUM_SQUARES;
+import static tablut.TranspositionTable.*;
+
+/** One thread of an AI's search: an iterative-deepening alpha-beta search
+ *  of a single board, together with the move lists, move-ordering tables,
+ *  and counters it uses.  Several Searchers may search the same position
+ *  at once on their own copies of the board ("Lazy SMP"), sharing nothing
+ *  but a transposition table, through which each profits from the others'
+ *  work.
+ *  @author Fourth Teerakapibal
+ */
+class Searcher {
+
+    /** A position-score magnitude indicating a win.  A win N moves into a
+     *  search is valued at WINNING_VALUE - N, to avoid putting off wins. */
+    static final int WINNING_VALUE = Integer.MAX_VALUE - 20;
+    /** A magnitude greater than a normal value. */
+    static final int INFTY = Integer.MAX_VALUE;
+
+    /** The maximum depth of search supported. */
+    static final int MAX_PLY = 64;
+
+    /** Prepare to search BOARD, which is modified during the search but
+     *  restored afterwards, recording results in TABLE and static
+     *  evaluations in EVALCACHE (none if null).  Searches
+     *  deeper than one level are abandoned at System.nanoTime() STOPTIME
+     *  or after visiting NODELIMIT positions.  Must be called on the thread
+     *  that will later halt me, before I start searching. */
+    void prepare(Board board, TranspositionTable table, EvalCache evalCache,
+                 long stopTime, long nodeLimit) {
+        _board = board;
+        _table = table;
+        _evalCache = evalCache;
+        _stopTime = stopTime;
+        _nodeLimit = nodeLimit;
+        _nodes = _qnodes = 0;
+        _probes = _hits = _collisions = 0;
+        _evalProbes = _evalHits = 0;
+        _cutoffs = _firstCutoffs = 0;
+        _depth = _selDepth = 0;
+        _lastIterationNodes = _prevIterationNodes = 0;
+        _halted = false;
+        _stopped = false;
+        for (int[] killers : _killers) {
+            killers[0] = killers[1] = 0;
+        }
+        for (int k = 0; k < _history.length; k += 1) {
+            _history[k] >>= 1;
+        }
+    }
+
+    /** Forget the move-ordering history gathered by earlier searches. */
+    void clearHistory() {
+        for (int k = 0; k < _history.length; k += 1) {
+            _history[k] = 0;
+        }
+    }
+
+    /** Return my board, made a copy of MODEL.  Used to give each of
+     *  several Searchers its own copy of a position. */
+    Board copyOf(Board model) {
+        if (_copy == null) {
+            _copy = new Board(model);
+        } else {
+            _copy.copy(model);
+        }
+        return _copy;
+    }
+
+    /** Enable null-move pruning iff NULLMOVE, late-move reductions iff
+     *  LMR, and futility pruning iff FUTILITY (see search).  All are
+     *  initially enabled. */
+    void setPruning(boolean nullMove, boolean lmr, boolean futility) {
+        _nullMove = nullMove;
+        _lmr = lmr;
+        _futility = futility;
+    }
+
+    /** Search my board by iterative deepening from FIRSTDEPTH levels up to
+     *  MAXDEPTH levels, stopping early if a win is found, a search runs
+     *  out of time or nodes, or I am halted.  Return the best move (in the
+     *  compact form of Move.pack) from the deepest search that finished,
+     *  or 0 if none did.  The one-level search always finishes unless I am
+     *  halted.  Each search after the first starts with a narrow window
+     *  around the value found by the one before, widening it as often as
+     *  the value falls outside it (see aspirationSearch). */
+    int search(int firstDepth, int maxDepth) {
+        int best = 0, value = 0;
+        maxDepth = min(maxDepth, MAX_PLY - 1);
+        for (int depth = firstDepth; depth <= maxDepth; depth += 1) {
+            _canStop = depth > 1;
+            long nodes0 = _nodes;
+            if (depth == firstDepth || isWin(value)) {
+                value = search(depth, 0, -INFTY, INFTY, best);
+            } else {
+                value = aspirationSearch(depth, value, best);
+            }
+            if (_stopped) {
+                break;
+            }
+            best = _lastFoundMove;
+            _depth = depth;
+            _prevIterationNodes = _lastIterationNodes;
+            _lastIterationNodes = _nodes - nodes0;
+            if (isWin(value)) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    /** Return the value of my board searched to DEPTH levels, searching
+     *  first the move FIRST, and starting with a window of
+     *  ASPIRATION_WINDOW on either side of GUESS.  Whenever the value
+     *  falls outside the window, the window is widened on that side,
+     *  twice as much each time, and the search repeated. */
+    private int aspirationSearch(int depth, int guess, int first) {
+        long delta = ASPIRATION_WINDOW;
+        int alpha = window(guess - delta), beta = window(guess + delta);
+        while (true) {
+            int value = search(depth, 0, alpha, beta, first);
+            if (_stopped) {
+                return 0;
+            } else if (value <= alpha && alpha > -INFTY) {
+                alpha = isWin(value) ? -INFTY : window(value - delta);
+            } else if (value >= beta && beta < INFTY) {
+                beta = isWin(value) ? INFTY : window(value + delta);
+            } else {
+                return value;
+            }
+            delta *= 2;
+        }
+    }
+
+    /** Return BOUND limited to the range -INFTY .. INFTY. */
+    private static int window(long bound) {
+        return (int) max(-INFTY, min(INFTY, bound));
+    }
+
+    /** Return true iff a node searched with the window ALPHA .. BETA is
+     *  on the principal variation: the window is wider than a null window.
+     *  The width is computed in long, since it overflows an int when
+     *  either bound is infinite. */
+    static boolean isPVWindow(int alpha, int beta) {
+        return (long) beta - alpha > 1;
+    }
+
+    /** Return true iff VALUE indicates a win or loss within the maximum
+     *  depth of search. */
+    private static boolean isWin(int value) {
+        return abs(value) >= WINNING_VALUE - MAX_PLY;
+    }
+
+    /** Make my search stop, once it has searched one level, at
+     *  System.nanoTime() STOPTIME.  May be called from any thread. */
+    void setStopTime(long stopTime) {
+        _stopTime = stopTime;
+    }
+
+    /** Stop my search as soon as possible.  May be called from any
+     *  thread. */
+    void halt() {
+        _halted = true;
+    }
+
+    /** Return the number of positions visited by my last search. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Add the counts from my last search to STATS.  If MAIN, I made the
+     *  main search, and my iteration depth and node counts are recorded
+     *  too. */
+    void addStats(SearchStats stats, boolean main) {
+        stats.nodes += _nodes;
+        stats.qnodes += _qnodes;
+        stats.probes += _probes;
+        stats.hits += _hits;
+        stats.collisions += _collisions;
+        stats.evalProbes += _evalProbes;
+        stats.evalHits += _evalHits;
+        stats.cutoffs += _cutoffs;
+        stats.firstCutoffs += _firstCutoffs;
+        stats.selDepth = max(stats.selDepth, _selDepth);
+        if (main) {
+            stats.depth = _depth;
+            stats.lastIterationNodes = _lastIterationNodes;
+            stats.prevIterationNodes = _prevIterationNodes;
+        }
+    }
+
+    /** Find a move from my board, PLY moves from the root of the search,
+     *  and return its value from the point of view of the player to move,
+     *  recording the move found in _lastFoundMove iff PLY == 0.  The value
+     *  is exact if it lies strictly between ALPHA and BETA; otherwise it is
+     *  at most ALPHA or at least BETA, as is the true value.  Searches up
+     *  to DEPTH levels.  Searching at level 0 searches only captures and
+     *  king escapes (see quiesce).  Results are recorded in and reused
+     *  from _table.  The best move recorded there, or else FIRST, if a
+     *  legal move (in compact form), is searched first, then captures,
+     *  then killer moves, then the rest by history (see scoreMoves).
+     *  After the first, moves are searched with a null window, just to
+     *  show that they are no better than the best so far, and searched
+     *  again with the full window only if they are.
+     *
+     *  Away from the principal variation, the search is selective, as
+     *  enabled by setPruning: it fails high at once if passing the move
+     *  to the opponent (a null move) still fails high in a shallower
+     *  search; it searches late quiet moves less deeply unless they turn
+     *  out better than expected; and, in the last levels, it skips quiet
+     *  moves when the static value is too far below ALPHA for one to
+     *  reach it.  Returns 0 once the search has been stopped. */
+    private int search(int depth, int ply, int alpha, int beta, int first) {
+        if (depth == 0) {
+            return quiesce(ply, alpha, beta);
+        }
+        Board board = _board;
+        if (visit()) {
+            return 0;
+        }
+        _selDepth = max(_selDepth, ply);
+        Piece winner = board.winner();
+        if (winner != null) {
+            return winValue(winner, ply);
+        }
+
+        long key = board.hashKey();
+        long entry = _table.probe(key);
+        _probes += 1;
+        if (entry == 0) {
+            _collisions += _table.isFull(key) ? 1 : 0;
+        } else {
+            _hits += 1;
+            first = TranspositionTable.move(entry);
+            if (ply > 0 && depth(entry) >= depth) {
+                int score = fromTable(score(entry), ply);
+                switch (bound(entry)) {
+                case EXACT:
+                    return score;
+                case LOWER:
+                    if (score >= beta) {
+                        return score;
+                    }
+                    break;
+                default:
+                    if (score <= alpha) {
+                        return score;
+                    }
+                    break;
+                }
+            }
+        }
+
+        boolean pvNode = isPVWindow(alpha, beta);
+        int eval = pvNode ? 0 : staticValue();
+        if (_nullMove && !pvNode && depth >= NULL_MOVE_DEPTH && ply > 0
+            && !_nulls[ply - 1] && eval >= beta) {
+            int reduction = depth > 6 ? 3 : 2;
+            _nulls[ply] = true;
+            board.makeNullMove();
+            int value = -search(max(depth - 1 - reduction, 0), ply + 1,
+                                -beta, -beta + 1, 0);
+            board.undoNullMove();
+            _nulls[ply] = false;
+            if (_stopped) {
+                return 0;
+            }
+            if (value >= beta) {
+                return isWin(value) ? beta : value;
+            }
+        }
+        boolean futile = _futility && !pvNode && depth < FUTILITY_MARGIN.length
+            && !isWin(alpha) && eval + FUTILITY_MARGIN[depth] <= alpha;
+
+        int alpha0 = alpha;
+        int bestMove = 0;
+        int[] possmoves = _moves[ply], scores = _scores[ply];
+        int nmoves = board.legalMoves(board.turn(), possmoves);
+        scoreMoves(possmoves, scores, nmoves, ply, first);
+        int best = -INFTY;
+        for (int i = 0; i < nmoves; i++) {
+            int next = nextMove(possmoves, scores, i, nmoves);
+            boolean quiet = scores[i] < KILLER_SCORE - 1;
+            if (futile && quiet && i > 0) {
+                continue;
+            }
+            board.makeMove(next);
+            int value;
+            if (i == 0) {
+                value = -search(depth - 1, ply + 1, -beta, -alpha, 0);
+            } else {
+                int reduction = 0;
+                if (_lmr && quiet && depth >= LMR_DEPTH && i >= LMR_MOVES) {
+                    reduction = depth >= 6 && i >= 4 * LMR_MOVES ? 2 : 1;
+                }
+                value = -search(depth - 1 - reduction, ply + 1,
+                                -alpha - 1, -alpha, 0);
+                if (value > alpha && reduction > 0 && !_stopped) {
+                    value = -search(depth - 1, ply + 1, -alpha - 1, -alpha, 0);
+                }
+                if (value > alpha && value < beta && !_stopped) {
+                    value = -search(depth - 1, ply + 1, -beta, -alpha, 0);
+                }
+            }
+            board.undo();
+            if (_stopped) {
+                return 0;
+            }
+            if (value > best) {
+                best = value;
+                bestMove = next;
+                if (ply == 0) {
+                    _lastFoundMove = next;
+                }
+            }
+            alpha = max(alpha, value);
+            if (alpha >= beta) {
+                _cutoffs += 1;
+                _firstCutoffs += i == 0 ? 1 : 0;
+                if (!board.isCapture(next)) {
+                    recordCutoff(next, depth, ply);
+                }
+                break;
+            }
+        }
+        int bound = best <= alpha0 ? UPPER : best >= beta ? LOWER : EXACT;
+        _table.store(key, depth, bound, toTable(best, ply), bestMove);
+        return best;
+    }
+
+    /** Return the value of my board, PLY moves from the root, from the
+     *  point of view of the player to move, as for search, but considering
+     *  only moves that capture or take the king to the edge (see
+     *  Board.captureMoves), and those only while they do better than the
+     *  static estimate of the board value.  The player to move is assumed
+     *  to be able to get that value by making some other move, so that the
+     *  search ends once a position is quiet.  Returns 0 once the search has
+     *  been stopped. */
+    private int quiesce(int ply, int alpha, int beta) {
+        Board board = _board;
+        if (visit()) {
+            return 0;
+        }
+        _qnodes += 1;
+        _selDepth = max(_selDepth, ply);
+        Piece winner = board.winner();
+        if (winner != null) {
+            return winValue(winner, ply);
+        }
+        int best = staticValue();
+        if (best >= beta || ply >= MAX_PLY - 1) {
+            return best;
+        }
+        alpha = max(alpha, best);
+        int[] moves = _moves[ply];
+        int nmoves = board.captureMoves(board.turn(), moves);
+        for (int i = 0; i < nmoves; i += 1) {
+            board.makeMove(moves[i]);
+            int value = -quiesce(ply + 1, -beta, -alpha);
+            board.undo();
+            if (_stopped) {
+                return 0;
+            }
+            if (value > best) {
+                best = value;
+                alpha = max(alpha, value);
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Return the static estimate of the value of my board (see
+     *  AI.staticScore) from the point of view of the player to move,
+     *  taking it from my evaluation cache if it is there. */
+    private int staticValue() {
+        int score;
+        if (_evalCache == null) {
+            score = AI.staticScore(_board);
+        } else {
+            long key = _board.hashKey();
+            score = _evalCache.probe(key);
+            _evalProbes += 1;
+            if (score == EvalCache.NONE) {
+                score = AI.staticScore(_board);
+                _evalCache.store(key, score);
+            } else {
+                _evalHits += 1;
+            }
+        }
+        return _board.turn() == WHITE ? score : -score;
+    }
+
+    /** Count a visit to a position, and return true iff the search has
+     *  been stopped, either now (because it has run out of time or nodes
+     *  or I have been halted) or before. */
+    private boolean visit() {
+        _nodes += 1;
+        if (_nodes % CLOCK_INTERVAL == 0 && _halted) {
+            _stopped = true;
+        }
+        if (_canStop && (_nodes >= _nodeLimit
+                         || (_nodes % CLOCK_INTERVAL == 0
+                             && System.nanoTime() >= _stopTime))) {
+            _stopped = true;
+        }
+        return _stopped;
+    }
+
+    /** Return the value of a position won by WINNER, PLY moves from the
+     *  root, from the point of view of the player to move. */
+    private int winValue(Piece winner, int ply) {
+        return winner == _board.turn() ? WINNING_VALUE - ply
+            : -WINNING_VALUE + ply;
+    }
+
+    /** Set SCORES[i] to the ordering score of MOVES[i], for 0 <= i < N,
+     *  where MOVES are the legal moves from my board at PLY and FIRST is
+     *  the move to search first (or 0): HASH_SCORE for FIRST,
+     *  CAPTURE_SCORE for captures and king escapes, KILLER_SCORE or just
+     *  below for the killer moves of PLY, and otherwise the history
+     *  score. */
+    private void scoreMoves(int[] moves, int[] scores, int n,
+                            int ply, int first) {
+        int[] killers = _killers[ply];
+        for (int i = 0; i < n; i += 1) {
+            int move = moves[i];
+            if (move == first) {
+                scores[i] = HASH_SCORE;
+            } else if (_board.isEscape(move) || _board.isCapture(move)) {
+                scores[i] = CAPTURE_SCORE;
+            } else if (move == killers[0]) {
+                scores[i] = KILLER_SCORE;
+            } else if (move == killers[1]) {
+                scores[i] = KILLER_SCORE - 1;
+            } else {
+                scores[i] = _history[historyIndex(move)];
+            }
+        }
+    }
+
+    /** Swap the entry with the highest score among MOVES[I .. N-1] (with
+     *  scores SCORES[I .. N-1]) into position I, and return it.  The first
+     *  of equal scores is chosen, so that ties keep generation order. */
+    private static int nextMove(int[] moves, int[] scores, int i, int n) {
+        int k = i;
+        for (int j = i + 1; j < n; j += 1) {
+            if (scores[j] > scores[k]) {
+                k = j;
+            }
+        }
+        int move = moves[k], score = scores[k];
+        moves[k] = moves[i];
+        scores[k] = scores[i];
+        moves[i] = move;
+        scores[i] = score;
+        return move;
+    }
+
+    /** Record that the quiet move MOVE caused a cutoff in a search of
+     *  DEPTH levels at PLY, updating the killer moves and history. */
+    private void recordCutoff(int move, int depth, int ply) {
+        int[] killers = _killers[ply];
+        if (killers[0] != move) {
+            killers[1] = killers[0];
+            killers[0] = move;
+        }
+        int k = historyIndex(move);
+        _history[k] += depth * depth;
+        if (_history[k] >= HISTORY_LIMIT) {
+            for (int j = 0; j < _history.length; j += 1) {
+                _history[j] >>= 1;
+            }
+        }
+    }
+
+    /** Return the index in _history of the compact move MOVE. */
+    private static int historyIndex(int move) {
+        return Move.from(move) * NUM_SQUARES + Move.to(move);
+    }
+
+    /** Return SCORE, found PLY moves from the root, in the form stored in
+     *  the transposition table, where wins are valued by their distance
+     *  from the position stored rather than from the root. */
+    private static int toTable(int score, int ply) {
+        if (score >= WINNING_VALUE - MAX_PLY) {
+            return score + ply;
+        } else if (score <= -WINNING_VALUE + MAX_PLY) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    /** Return the inverse of toTable(SCORE, PLY). */
+    private static int fromTable(int score, int ply) {
+        if (score >= WINNING_VALUE - MAX_PLY) {
+            return score - ply;
+        } else if (score <= -WINNING_VALUE + MAX_PLY) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    /** Number of positions searched between checks of the clock and of
+     *  requests to halt. */
+    private static final int CLOCK_INTERVAL = 1024;
+
+    /** Half the width of the initial aspiration window. */
+    private static final int ASPIRATION_WINDOW = 20;
+
+    /** Least depth at which a null move is tried. */
+    private static final int NULL_MOVE_DEPTH = 3;
+
+    /** Least depth at which moves are reduced, and the number of moves
+     *  searched in full before reducing any. */
+    private static final int LMR_DEPTH = 3, LMR_MOVES = 3;
+
+    /** FUTILITY_MARGIN[d] is the most a quiet move is assumed to improve
+     *  the static value in a search of d levels, for d > 0; quiet moves
+     *  are not pruned at greater depths. */
+    private static final int[] FUTILITY_MARGIN = { 0, 60, 160 };
+
+    /** Ordering scores of the hash move, captures, and killer moves, in
+     *  decreasing order.  History scores are kept below KILLER_SCORE by
+     *  halving them all when one reaches HISTORY_LIMIT. */
+    private static final int
+        HASH_SCORE = Integer.MAX_VALUE, CAPTURE_SCORE = 1 << 29,
+        KILLER_SCORE = 1 << 28, HISTORY_LIMIT = 1 << 24;
+
+    /** The board being searched. */
+    private Board _board;
+    /** My own board, used by copyOf, or null. */
+    private Board _copy;
+    /** Transposition table used by the current search. */
+    private TranspositionTable _table;
+    /** Evaluation cache used by the current search, or null. */
+    private EvalCache _evalCache;
+
+    /** The compact encoding (see Move.pack) of the move found by the last
+     *  call to search with PLY == 0. */
+    private int _lastFoundMove;
+
+    /** _moves[p] holds the moves generated at ply p (the root being at
+     *  ply 0) of the current search path. */
+    private final int[][] _moves = new int[MAX_PLY][Board.MAX_MOVES];
+    /** _scores[p][i] is the ordering score of _moves[p][i]. */
+    private final int[][] _scores = new int[MAX_PLY][Board.MAX_MOVES];
+
+    /** _killers[p] holds the two most recent quiet (non-capturing) moves,
+     *  most recent first, that caused a cutoff at ply p. */
+    private final int[][] _killers = new int[MAX_PLY][2];
+
+    /** _history[f * NUM_SQUARES + t] measures how often quiet moves from
+     *  square index f to t have caused cutoffs, weighted by depth. */
+    private final int[] _history = new int[NUM_SQUARES * NUM_SQUARES];
+
+    /** _nulls[p] is true iff the move at ply p of the current search path
+     *  is a null move. */
+    private final boolean[] _nulls = new boolean[MAX_PLY];
+
+    /** True iff null-move pruning, late-move reductions, and futility
+     *  pruning are enabled. */
+    private boolean _nullMove = true, _lmr = true, _futility = true;
+
+    /** Value of System.nanoTime() at which the current search must stop. */
+    private volatile long _stopTime;
+    /** The number of positions the current search may visit. */
+    private long _nodeLimit;
+    /** Number of positions visited so far by the current search, and the
+     *  number of those visited by quiesce. */
+    private long _nodes, _qnodes;
+    /** Number of transposition-table probes by the current search, the
+     *  number that found an entry, and the number that found none in a
+     *  full bucket. */
+    private long _probes, _hits, _collisions;
+    /** Number of evaluation-cache probes by the current search, and the
+     *  number that found an entry. */
+    private long _evalProbes, _evalHits;
+    /** Number of beta cutoffs in the current search, and the number caused
+     *  by the first move searched. */
+    private long _cutoffs, _firstCutoffs;
+    /** Numbers of nodes visited by the last two complete iterations, the
+     *  last first. */
+    private long _lastIterationNodes, _prevIterationNodes;
+    /** Depth of the last complete iteration, and the greatest ply
+     *  reached. */
+    private int _depth, _selDepth;
+    /** True iff the current iteration may be abandoned when it runs out of
+     *  time or nodes. */
+    private boolean _canStop;
+    /** True once the current iteration has been abandoned. */
+    private boolean _stopped;
+    /** True once another thread has asked me to stop. */
+    private volatile boolean _halted;
+}
@@ -0,0 +1,151 @@
+package tablut;
+
+import java.util.Arrays;
+
+/** A fixed-size table of search results, indexed by position hash key
+ *  (see Board.hashKey).  Each entry records the depth searched, the kind of
+ *  bound the score represents, the score, and the best move found, packed
+ *  into a single long.  Entries are kept in buckets of two: the first
+ *  slot is replaced only by deeper (or equally deep) searches or by results
+ *  of a later search, and the second slot always takes what the first
+ *  rejects.
+ *
+ *  Each slot stores its key XORed with its data, so that a slot read while
+ *  another thread is writing it fails to match rather than yielding a
+ *  mixture of two entries.  The table therefore needs no locking.
+ *  @author Fourth Teerakapibal
+ */
+class TranspositionTable {
+
+    /** Bound types: the score is exact, a lower bound, or an upper bound
+     *  on the true value. */
+    static final int EXACT = 1, LOWER = 2, UPPER = 3;
+
+    /** Number of bytes used by each entry. */
+    static final int ENTRY_BYTES = 2 * Long.BYTES;
+
+    /** A table occupying about MEGABYTES megabytes (at least one bucket).
+     *  The number of entries is a power of two. */
+    TranspositionTable(int megabytes) {
+        long entries = ((long) megabytes << 20) / ENTRY_BYTES;
+        int buckets = 1;
+        while ((long) buckets * 4 <= entries && buckets < MAX_BUCKETS) {
+            buckets *= 2;
+        }
+        _mask = buckets - 1;
+        _checks = new long[2 * buckets];
+        _data = new long[2 * buckets];
+    }
+
+    /** Return the number of entries I can hold. */
+    int capacity() {
+        return _data.length;
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_checks, 0L);
+        Arrays.fill(_data, 0L);
+        _generation = 0;
+    }
+
+    /** Note the start of a new search, so that entries from earlier
+     *  searches are replaced in preference to current ones. */
+    void newSearch() {
+        _generation = (_generation + 1) & GENERATION_MASK;
+    }
+
+    /** Return the packed entry stored for KEY, or 0 if there is none.
+     *  Use depth, bound, score, and move to unpack the result. */
+    long probe(long key) {
+        int slot = (int) key & _mask;
+        slot += slot;
+        for (int k = slot; k < slot + 2; k += 1) {
+            long data = _data[k];
+            if ((_checks[k] ^ data) == key && data != 0) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    /** Return true iff both slots of the bucket for KEY hold entries
+     *  (whether or not for KEY). */
+    boolean isFull(long key) {
+        int slot = (int) key & _mask;
+        slot += slot;
+        return _data[slot] != 0 && _data[slot + 1] != 0;
+    }
+
+    /** Record that a search of DEPTH levels from the position with hash
+     *  KEY found SCORE, a bound of type BOUND, with best move MOVE (in
+     *  the compact form of Move.pack, or 0 for none). */
+    void store(long key, int depth, int bound, int score, int move) {
+        int slot = (int) key & _mask;
+        slot += slot;
+        long old = _data[slot];
+        if ((_checks[slot] ^ old) != key && old != 0
+            && generation(old) == _generation && depth(old) > depth) {
+            slot += 1;
+        } else if ((_checks[slot] ^ old) == key && move == 0) {
+            move = move(old);
+        }
+        long data = (score & 0xffffffffL)
+            | ((long) move << MOVE_SHIFT)
+            | ((long) min(depth, DEPTH_MASK) << DEPTH_SHIFT)
+            | ((long) bound << BOUND_SHIFT)
+            | ((long) _generation << GENERATION_SHIFT);
+        _data[slot] = data;
+        _checks[slot] = key ^ data;
+    }
+
+    /** Return the depth searched in ENTRY. */
+    static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & DEPTH_MASK;
+    }
+
+    /** Return the bound type (EXACT, LOWER, or UPPER) of ENTRY. */
+    static int bound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /** Return the score in ENTRY. */
+    static int score(long entry) {
+        return (int) entry;
+    }
+
+    /** Return the best move (in compact form) in ENTRY, or 0 if none. */
+    static int move(long entry) {
+        return (int) (entry >>> MOVE_SHIFT) & MOVE_MASK;
+    }
+
+    /** Return the search generation of ENTRY. */
+    private static int generation(long entry) {
+        return (int) (entry >>> GENERATION_SHIFT) & GENERATION_MASK;
+    }
+
+    /** Return the smaller of X and Y. */
+    private static int min(int x, int y) {
+        return x < y ? x : y;
+    }
+
+    /** Positions and sizes of the fields of an entry.  The score occupies
+     *  the low-order 32 bits. */
+    private static final int
+        MOVE_SHIFT = 32, MOVE_MASK = (1 << 14) - 1,
+        DEPTH_SHIFT = 46, DEPTH_MASK = (1 << 8) - 1,
+        BOUND_SHIFT = 54, BOUND_MASK = 3,
+        GENERATION_SHIFT = 56, GENERATION_MASK = (1 << 8) - 1;
+
+    /** Largest number of buckets in a table. */
+    private static final int MAX_BUCKETS = 1 << 29;
+
+    /** Mask selecting the bits of a key that determine its bucket. */
+    private final int _mask;
+    /** For each slot, its key XORed with its data. */
+    private final long[] _checks;
+    /** For each slot, its packed entry (0 if empty). */
+    private final long[] _data;
+    /** The current search generation. */
+    private int _generation;
+}
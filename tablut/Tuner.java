@@ -0,0 +1,469 @@
+package tablut;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.DoubleUnaryOperator;
+
+import ucb.util.CommandArgs;
+
+import static tablut.EvalState.NUM_WEIGHTS;
+import static tablut.Square.NUM_SQUARES;
+import static tablut.Utils.error;
+
+/** Tuning of the weights of the static evaluation (see EvalState) by
+ *  Texel's method.  The AI plays games against itself, and the quiet
+ *  positions of each game (those in which the player to move can neither
+ *  capture nor move the king to the edge) are written to a data file,
+ *  each labelled with the game's result.  The weights are then fitted so
+ *  that a logistic function of the evaluation of each position predicts
+ *  its result with the least mean squared error, and written to a weight
+ *  file that the AI can load (see AI.loadWeights).
+ *
+ *  A data file starts with the int MAGIC, followed by one RECORD_BYTES
+ *  record per position: a byte of flags (WHITE_TO_MOVE, WHITE_WON), then
+ *  the Piece ordinal of the contents of each square in index order, two
+ *  bits each, four to a byte starting with the low-order bits.
+ *
+ *  The games are played, and the error and its gradient computed, in
+ *  parallel on all processors, using the common fork/join pool.
+ *  @author Fourth Teerakapibal
+ */
+class Tuner {
+
+    /** A tuner for the positions in the data file NAME whose games are
+     *  not already over. */
+    Tuner(String name) throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        try (DataInputStream in =
+             new DataInputStream(new BufferedInputStream(
+                 new FileInputStream(name)))) {
+            if (in.readInt() != MAGIC) {
+                throw error("%s is not a tuning data file", name);
+            }
+            while (true) {
+                byte[] record = new byte[RECORD_BYTES];
+                int n = in.read(record);
+                if (n < 0) {
+                    break;
+                }
+                in.readFully(record, n, RECORD_BYTES - n);
+                records.add(record);
+            }
+        }
+        _features = new byte[records.size() * NUM_WEIGHTS];
+        _results = new byte[records.size()];
+        Board board = new Board();
+        int[] features = new int[NUM_WEIGHTS];
+        int n = 0;
+        for (byte[] record : records) {
+            decode(record, board);
+            if (board.winner() == null) {
+                EvalState.features(board, features);
+                for (int j = 0; j < NUM_WEIGHTS; j += 1) {
+                    _features[n * NUM_WEIGHTS + j] = (byte) features[j];
+                }
+                _results[n] = (byte) ((record[0] & WHITE_WON) != 0 ? 1 : 0);
+                n += 1;
+            }
+        }
+        _size = n;
+    }
+
+    /** Return the number of positions I fit. */
+    int size() {
+        return _size;
+    }
+
+    /** Set my scale, the factor by which evaluations are multiplied
+     *  before applying the logistic function, and my bias, the amount
+     *  added to them first, to those that minimize the error of WEIGHTS,
+     *  and return the scale.  The bias accounts for the advantage of one
+     *  side in positions that a symmetric evaluation would call even. */
+    double fitScale(int[] weights) {
+        double[] scores = new double[_size];
+        for (int i = 0; i < _size; i += 1) {
+            for (int j = 0; j < NUM_WEIGHTS; j += 1) {
+                scores[i] += weights[j] * _features[i * NUM_WEIGHTS + j];
+            }
+        }
+        _scale = Math.exp(minimize(x -> {
+            _scale = Math.exp(x);
+            fitBias(scores);
+            return meanError(scores);
+        }, Math.log(MIN_SCALE), Math.log(MAX_SCALE)));
+        fitBias(scores);
+        return _scale;
+    }
+
+    /** Return my bias (see fitScale). */
+    double bias() {
+        return _bias;
+    }
+
+    /** Set my bias to that minimizing the error of predictions from
+     *  SCORES[i], the evaluation of position #i, with my current
+     *  scale. */
+    private void fitBias(double[] scores) {
+        _bias = minimize(b -> {
+            _bias = b;
+            return meanError(scores);
+        }, -MAX_BIAS, MAX_BIAS);
+    }
+
+    /** Return the mean squared error of predictions from SCORES[i], the
+     *  evaluation of position #i, with my current scale and bias. */
+    private double meanError(double[] scores) {
+        double sum = 0;
+        for (int i = 0; i < _size; i += 1) {
+            double diff = _results[i] - predict(scores[i]);
+            sum += diff * diff;
+        }
+        return sum / Math.max(_size, 1);
+    }
+
+    /** Return the predicted result of a position whose evaluation (not
+     *  including my bias) is SCORE. */
+    private double predict(double score) {
+        return 1 / (1 + Math.exp(-_scale * (score + _bias)));
+    }
+
+    /** Return the X in LO .. HI minimizing F, assumed unimodal there, to
+     *  within (HI - LO) / 2**(MINIMIZE_STEPS * 0.69), by golden-section
+     *  search. */
+    private static double minimize(DoubleUnaryOperator f,
+                                   double lo, double hi) {
+        final double phi = (Math.sqrt(5) - 1) / 2;
+        for (int i = 0; i < MINIMIZE_STEPS; i += 1) {
+            double x0 = hi - phi * (hi - lo), x1 = lo + phi * (hi - lo);
+            if (f.applyAsDouble(x0) < f.applyAsDouble(x1)) {
+                hi = x1;
+            } else {
+                lo = x0;
+            }
+        }
+        return (lo + hi) / 2;
+    }
+
+    /** Return the weights that result from ITERATIONS steps of gradient
+     *  descent (by the Adam method) on the error, starting from WEIGHTS,
+     *  rounded to integers.  My bias is fitted along with them.  Report
+     *  the error every REPORT_INTERVAL steps on LOG. */
+    int[] tune(int[] weights, int iterations, PrintStream log) {
+        double[] w = new double[PARAMS],
+            m = new double[PARAMS], v = new double[PARAMS];
+        for (int j = 0; j < NUM_WEIGHTS; j += 1) {
+            w[j] = weights[j];
+        }
+        w[BIAS] = _bias;
+        for (int t = 1; t <= iterations; t += 1) {
+            double[] gradient = evaluate(w);
+            if (t % REPORT_INTERVAL == 1 || t == iterations) {
+                log.printf("iteration %d: error %.6f%n", t, gradient[PARAMS]);
+            }
+            double c1 = 1 - Math.pow(BETA1, t),
+                c2 = 1 - Math.pow(BETA2, t);
+            for (int j = 0; j < PARAMS; j += 1) {
+                double g = gradient[j];
+                m[j] = BETA1 * m[j] + (1 - BETA1) * g;
+                v[j] = BETA2 * v[j] + (1 - BETA2) * g * g;
+                w[j] -= LEARNING_RATE * (m[j] / c1)
+                    / (Math.sqrt(v[j] / c2) + EPSILON);
+            }
+        }
+        _bias = w[BIAS];
+        int[] result = new int[NUM_WEIGHTS];
+        for (int j = 0; j < NUM_WEIGHTS; j += 1) {
+            result[j] = (int) Math.round(w[j]);
+        }
+        return result;
+    }
+
+    /** Return the gradient of the mean squared error with respect to each
+     *  of PARAMS (the weights followed by the bias), followed by the error
+     *  itself. */
+    private double[] evaluate(double[] params) {
+        double[] result =
+            ForkJoinPool.commonPool().invoke(new Errors(params, 0, _size));
+        for (int j = 0; j <= PARAMS; j += 1) {
+            result[j] /= Math.max(_size, 1);
+        }
+        return result;
+    }
+
+    /** A computation of the sums over a range of positions of the
+     *  squared errors of the predictions of a set of weights and bias and
+     *  of their gradients, splitting the range among subtasks. */
+    private final class Errors extends RecursiveTask<double[]> {
+        /** Version of the serialized form, which is never used. */
+        private static final long serialVersionUID = 1L;
+
+        /** Sums over positions LO .. HI-1 for PARAMS (the weights followed
+         *  by the bias). */
+        Errors(double[] params, int lo, int hi) {
+            _params = params;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (_hi - _lo > GRAIN) {
+                int mid = (_lo + _hi) >>> 1;
+                Errors left = new Errors(_params, _lo, mid);
+                left.fork();
+                double[] result = new Errors(_params, mid, _hi).compute();
+                double[] other = left.join();
+                for (int j = 0; j <= PARAMS; j += 1) {
+                    result[j] += other[j];
+                }
+                return result;
+            }
+            double[] result = new double[PARAMS + 1];
+            for (int i = _lo; i < _hi; i += 1) {
+                int base = i * NUM_WEIGHTS;
+                double score = _params[BIAS];
+                for (int j = 0; j < NUM_WEIGHTS; j += 1) {
+                    score += _params[j] * _features[base + j];
+                }
+                double p = 1 / (1 + Math.exp(-_scale * score)),
+                    diff = _results[i] - p;
+                result[PARAMS] += diff * diff;
+                double slope = -2 * diff * p * (1 - p) * _scale;
+                for (int j = 0; j < NUM_WEIGHTS; j += 1) {
+                    result[j] += slope * _features[base + j];
+                }
+                result[BIAS] += slope;
+            }
+            return result;
+        }
+
+        /** The weights and bias whose errors are summed. */
+        private final double[] _params;
+        /** The range of positions summed over. */
+        private final int _lo, _hi;
+    }
+
+    /** Play GAMES games of the AI against itself, each starting with
+     *  OPENING_MOVES random moves chosen using SEED and searching NODES
+     *  positions per move, and write the positions of those that finish
+     *  in MAX_GAME_MOVES moves to the data file NAME.  Return the number
+     *  of positions written. */
+    static int generate(int games, long nodes, long seed, String name)
+        throws IOException {
+        List<Callable<byte[]>> tasks = new ArrayList<>();
+        for (int g = 0; g < games; g += 1) {
+            long gameSeed = seed + g;
+            tasks.add(() -> playGame(nodes, gameSeed));
+        }
+        int positions = 0;
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(
+                 new FileOutputStream(name)))) {
+            out.writeInt(MAGIC);
+            for (Future<byte[]> game
+                     : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                byte[] records = game.get();
+                out.write(records);
+                positions += records.length / RECORD_BYTES;
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        }
+        return positions;
+    }
+
+    /** Play one game of the AI against itself as for generate, and return
+     *  the records of its quiet positions (none if the game reaches the
+     *  move limit). */
+    private static byte[] playGame(long nodes, long seed) {
+        Random random = new Random(seed);
+        Board board = new Board();
+        board.setMoveLimit(MAX_GAME_MOVES);
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int i = 0; i < OPENING_MOVES && board.winner() == null; i += 1) {
+            int n = board.legalMoves(board.turn(), moves);
+            board.makeMove(moves[random.nextInt(n)]);
+        }
+        AI ai = GAME_AI.get();
+        ai.clearTables();
+        List<byte[]> records = new ArrayList<>();
+        while (board.winner() == null) {
+            if (board.captureMoves(board.turn(), moves) == 0) {
+                records.add(encode(board));
+            }
+            board.makeMove(ai.findMove(board, Integer.MAX_VALUE, 0, nodes,
+                                       1));
+        }
+        if (board.moveCount() >= 2 * MAX_GAME_MOVES) {
+            return new byte[0];
+        }
+        byte[] result = new byte[records.size() * RECORD_BYTES];
+        for (int i = 0; i < records.size(); i += 1) {
+            byte[] record = records.get(i);
+            if (board.winner() == Piece.WHITE) {
+                record[0] |= WHITE_WON;
+            }
+            System.arraycopy(record, 0, result, i * RECORD_BYTES,
+                             RECORD_BYTES);
+        }
+        return result;
+    }
+
+    /** Return a data-file record for BOARD, labelled as a loss for
+     *  white. */
+    private static byte[] encode(Board board) {
+        byte[] record = new byte[RECORD_BYTES];
+        record[0] = board.turn() == Piece.WHITE ? WHITE_TO_MOVE : 0;
+        for (int k = 0; k < NUM_SQUARES; k += 1) {
+            int p = board.get(Square.sq(k)).ordinal();
+            record[1 + k / 4] |= p << (2 * (k % 4));
+        }
+        return record;
+    }
+
+    /** Set BOARD to the position in RECORD. */
+    private static void decode(byte[] record, Board board) {
+        Piece[] contents = new Piece[NUM_SQUARES];
+        for (int k = 0; k < NUM_SQUARES; k += 1) {
+            contents[k] = PIECES[(record[1 + k / 4] >> (2 * (k % 4))) & 3];
+        }
+        board.setPosition(contents, (record[0] & WHITE_TO_MOVE) != 0
+                          ? Piece.WHITE : Piece.BLACK);
+    }
+
+    /** Generate tuning data or tune weights.  ARGS are either --games=N
+     *  [--nodes=N] [--seed=N] DATA, to play N games, searching the given
+     *  number of positions per move, and write their positions to the
+     *  file DATA, or [--iterations=N] DATA WEIGHTS, to fit the weights to
+     *  the positions in DATA, starting from the current ones, and write
+     *  them to the file WEIGHTS. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--games={0,1} --nodes={0,1} --seed={0,1}"
+                            + " --iterations={0,1} --={1,2}", args);
+        List<String> files = options.get("--");
+        if (!options.ok()
+            || options.contains("--games") != (files.size() == 1)) {
+            System.err.println("Usage: java tablut.Tuner --games=N"
+                               + " [--nodes=N] [--seed=N] DATA"
+                               + " | [--iterations=N] DATA WEIGHTS");
+            System.exit(1);
+        }
+        try {
+            if (options.contains("--games")) {
+                int games = Integer.parseInt(options.getFirst("--games"));
+                long nodes = options.contains("--nodes")
+                    ? Long.parseLong(options.getFirst("--nodes"))
+                    : DEFAULT_NODES;
+                long seed = options.contains("--seed")
+                    ? Long.parseLong(options.getFirst("--seed")) : 0;
+                int n = generate(games, nodes, seed, files.get(0));
+                System.out.printf("%d positions from %d games written to"
+                                  + " %s%n", n, games, files.get(0));
+                return;
+            }
+            int iterations = options.contains("--iterations")
+                ? Integer.parseInt(options.getFirst("--iterations"))
+                : DEFAULT_ITERATIONS;
+            Tuner tuner = new Tuner(files.get(0));
+            int[] weights = EvalState.weights();
+            System.out.printf("%d positions; scale %.6f%n", tuner.size(),
+                              tuner.fitScale(weights));
+            weights = tuner.tune(weights, iterations, System.out);
+            System.out.printf("bias %.1f%n", tuner.bias());
+            try (PrintWriter out =
+                 new PrintWriter(new FileWriter(files.get(1)))) {
+                out.printf("# Tuned on %d positions from %s.%n",
+                           tuner.size(), files.get(0));
+                EvalState.writeWeights(weights, out);
+            }
+        } catch (IOException excp) {
+            System.err.printf("Could not access file: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** First int of a data file. */
+    static final int MAGIC = 0x54544431;
+
+    /** Flags in the first byte of a record. */
+    static final byte WHITE_TO_MOVE = 1, WHITE_WON = 2;
+
+    /** Number of bytes in a data-file record. */
+    static final int RECORD_BYTES = 1 + (NUM_SQUARES + 3) / 4;
+
+    /** Number of random moves that start each game. */
+    private static final int OPENING_MOVES = 6;
+
+    /** Move limit of each game (see Board.setMoveLimit). */
+    private static final int MAX_GAME_MOVES = 100;
+
+    /** The AI playing the games of generate on each thread, reused from
+     *  game to game, since each has a transposition table and an
+     *  evaluation cache of several megabytes. */
+    private static final ThreadLocal<AI> GAME_AI =
+        ThreadLocal.withInitial(AI::new);
+
+    /** Default number of positions searched per move in games. */
+    private static final long DEFAULT_NODES = 20000;
+
+    /** Default number of steps of gradient descent. */
+    private static final int DEFAULT_ITERATIONS = 1000;
+
+    /** Number of steps between reports of the error. */
+    private static final int REPORT_INTERVAL = 100;
+
+    /** Ranges of scales and biases considered by fitScale. */
+    private static final double MIN_SCALE = 1e-4, MAX_SCALE = 1e-1,
+        MAX_BIAS = 2000;
+
+    /** Number of steps of a search by minimize. */
+    private static final int MINIMIZE_STEPS = 40;
+
+    /** Index of the bias in a vector of parameters (the weights followed
+     *  by the bias), and the length of such a vector. */
+    private static final int BIAS = NUM_WEIGHTS, PARAMS = NUM_WEIGHTS + 1;
+
+    /** Parameters of the Adam method: step size, decay rates of the
+     *  moment estimates, and a term preventing division by zero. */
+    private static final double LEARNING_RATE = 1.0, BETA1 = 0.9,
+        BETA2 = 0.999, EPSILON = 1e-12;
+
+    /** Largest number of positions summed by one Errors task without
+     *  splitting. */
+    private static final int GRAIN = 8192;
+
+    /** All Pieces, indexed by ordinal. */
+    private static final Piece[] PIECES = Piece.values();
+
+    /** Number of positions. */
+    private final int _size;
+    /** The features (see EvalState.features) of position #i are
+     *  _features[i * NUM_WEIGHTS .. (i + 1) * NUM_WEIGHTS - 1]. */
+    private final byte[] _features;
+    /** _results[i] is 1 if white won the game of position #i, else 0. */
+    private final byte[] _results;
+    /** Factor applied to evaluations before the logistic function, and
+     *  amount added to them before that (see fitScale). */
+    private double _scale = Math.sqrt(MIN_SCALE * MAX_SCALE), _bias;
+}
@@ -1,5 +1,18 @@
 package tablut;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Test;
 import static org.junit.Assert.*;
 import ucb.junit.textui;
@@ -21,6 +34,672 @@ public class UnitTest {
         assertTrue("There are no unit tests!", true);
     }
 
-}
+    /** Check that undo restores captured pieces and the side to move. */
+    @Test
+    public void undoCaptureTest() {
+        Board b = new Board();
+        b.makeMove(Move.mv("i4-f"));
+        b.makeMove(Move.mv("e4-b"));
+        String before = b.encodedBoard();
+        b.makeMove(Move.mv("f4-e"));
+        assertEquals(Piece.EMPTY, b.get(Square.sq("e3")));
+        b.undo();
+        assertEquals(before, b.encodedBoard());
+        assertEquals(Piece.BLACK, b.turn());
+        assertEquals(2, b.moveCount());
+    }
+
+    /** Check that the king's square is kept through a king move and its
+     *  undoing. */
+    @Test
+    public void kingMoveTest() {
+        Board b = new Board();
+        b.makeMove(Move.mv("d9-8"));
+        b.makeMove(Move.mv("e6-g"));
+        b.makeMove(Move.mv("a4-3"));
+        b.makeMove(Move.mv("e5-6"));
+        assertEquals(Square.sq("e6"), b.kingPosition());
+        assertNull(b.winner());
+        b.undo();
+        assertEquals(Square.sq("e5"), b.kingPosition());
+        assertNull(b.winner());
+    }
+
+    /** Check the generation of capturing moves. */
+    @Test
+    public void captureMovesTest() {
+        Board b = new Board();
+        int[] moves = new int[Board.MAX_MOVES];
+        assertEquals(0, b.captureMoves(Piece.BLACK, moves));
+        b.makeMove(Move.mv("i4-f"));
+        b.makeMove(Move.mv("e4-b"));
+        int capture = Move.mv("f4-e").pack();
+        assertTrue(b.isCapture(capture));
+        assertFalse(b.isCapture(Move.mv("f4-g").pack()));
+        int n = b.captureMoves(Piece.BLACK, moves);
+        boolean found = false;
+        for (int i = 0; i < n; i += 1) {
+            assertTrue(b.isCapture(moves[i]));
+            found |= moves[i] == capture;
+        }
+        assertTrue(found);
+    }
+
+    /** Check, over the positions of random games, that isCapture is true
+     *  of exactly the moves that remove a piece, and that it leaves the
+     *  board and its hash key as they were. */
+    @Test
+    public void isCaptureTest() {
+        Random random = new Random(11);
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int game = 0; game < 20; game += 1) {
+            Board b = new Board();
+            while (b.winner() == null && b.moveCount() < 200) {
+                String before = b.encodedBoard();
+                long key = b.hashKey();
+                int pieces = b.numblack() + b.numwhite();
+                int n = b.legalMoves(b.turn(), moves);
+                for (int i = 0; i < n; i += 1) {
+                    boolean capture = b.isCapture(moves[i]);
+                    assertEquals(before, b.encodedBoard());
+                    assertEquals(key, b.hashKey());
+                    b.makeMove(moves[i]);
+                    assertEquals(capture,
+                                 b.numblack() + b.numwhite() < pieces);
+                    b.undo();
+                }
+                b.makeMove(moves[random.nextInt(n)]);
+            }
+        }
+    }
+
+    /** Check that the evaluation terms follow moves, captures, undoing,
+     *  and copying. */
+    @Test
+    public void evalStateTest() {
+        Board b = new Board();
+        EvalState eval = b.evalState();
+        int material = eval.material(), score = eval.score();
+        assertEquals(4, eval.kingDefenders());
+        b.makeMove(Move.mv("i4-f"));
+        b.makeMove(Move.mv("e4-b"));
+        assertEquals(3, eval.kingDefenders());
+        b.makeMove(Move.mv("f4-e"));
+        assertEquals(1, eval.kingAttackers());
+        assertEquals(material - EvalState.MATERIAL[Piece.WHITE.ordinal()],
+                     eval.material());
+        Board copy = new Board(b);
+        assertEquals(eval.score(), copy.evalState().score());
+        for (int i = 0; i < 3; i += 1) {
+            b.undo();
+        }
+        assertEquals(score, eval.score());
+        assertEquals(0, eval.kingAttackers());
+        assertEquals(4, eval.kingDefenders());
+    }
+
+    /** Check the king's escape distance and routes. */
+    @Test
+    public void escapeTest() {
+        Board b = new Board();
+        assertEquals(Board.MAX_ESCAPE_DISTANCE + 1, b.escapeDistance());
+        assertEquals(0, b.escapeRoutes());
+        b.makeMove(Move.mv("d9-8"));
+        b.makeMove(Move.mv("e7-g"));
+        b.makeMove(Move.mv("i4-3"));
+        b.makeMove(Move.mv("e6-h"));
+        assertEquals(2, b.escapeDistance());
+        b.makeMove(Move.mv("a4-3"));
+        b.makeMove(Move.mv("e5-7"));
+        assertEquals(1, b.escapeDistance());
+        assertEquals(1, b.escapeRoutes());
+        b.undo();
+        assertEquals(2, b.escapeDistance());
+    }
+
+    /** Check reading and writing evaluation weights, and that the
+     *  features of a position weighted by them give its evaluation. */
+    @Test
+    public void weightsTest() throws IOException {
+        int[] weights = EvalState.readWeights(
+            new StringReader("# comment\nwhite 120\n  escape1 -7\n"));
+        assertEquals(120, weights[EvalState.WHITE_MATERIAL]);
+        assertEquals(-7, weights[EvalState.ESCAPE + 1]);
+        assertEquals(EvalState.DEFAULT_WEIGHTS[EvalState.BLACK_MATERIAL],
+                     weights[EvalState.BLACK_MATERIAL]);
+        StringWriter text = new StringWriter();
+        EvalState.writeWeights(weights, new PrintWriter(text));
+        assertArrayEquals(weights, EvalState.readWeights(
+            new StringReader(text.toString())));
+
+        Board b = new Board();
+        b.makeMove(Move.mv("d9-8"));
+        b.makeMove(Move.mv("e7-g"));
+        int[] features = new int[EvalState.NUM_WEIGHTS];
+        EvalState.features(b, features);
+        int[] current = EvalState.weights();
+        int score = 0;
+        for (int i = 0; i < features.length; i += 1) {
+            score += current[i] * features[i];
+        }
+        assertEquals(AI.staticScore(b), score);
+    }
+
+    /** Check that position keys depend only on the position and that
+     *  returning to an earlier position loses. */
+    @Test
+    public void hashKeyTest() {
+        Board b1 = new Board(), b2 = new Board();
+        long initial = b1.hashKey();
+        for (String mv : new String[] { "a4-3", "c5-3", "i4-3" }) {
+            b1.makeMove(Move.mv(mv));
+        }
+        for (String mv : new String[] { "i4-3", "c5-3", "a4-3" }) {
+            b2.makeMove(Move.mv(mv));
+        }
+        assertEquals(b1.hashKey(), b2.hashKey());
+        b1.undo();
+        b1.undo();
+        b1.undo();
+        assertEquals(initial, b1.hashKey());
+        for (String mv : new String[] { "a4-3", "c5-3", "a3-4" }) {
+            b1.makeMove(Move.mv(mv));
+        }
+        assertNull(b1.winner());
+        b1.makeMove(Move.mv("c3-5"));
+        assertTrue(b1.repeatedPosition());
+        assertEquals(Piece.BLACK, b1.winner());
+    }
+
+    /** Check that a copied board has its own history. */
+    @Test
+    public void copyTest() {
+        Board b = new Board();
+        b.makeMove(Move.mv("a4-3"));
+        b.makeMove(Move.mv("c5-3"));
+        Board c = new Board(b);
+        assertEquals(b.encodedBoard(), c.encodedBoard());
+        assertEquals(b.hashKey(), c.hashKey());
+        c.makeMove(Move.mv("a3-4"));
+        c.undo();
+        c.undo();
+        assertEquals(1, c.moveCount());
+        assertEquals(2, b.moveCount());
+        b.makeMove(Move.mv("a3-4"));
+        b.makeMove(Move.mv("c3-5"));
+        assertTrue(b.repeatedPosition());
+        assertFalse(c.repeatedPosition());
+    }
+
+    /** Check storing and retrieving transposition-table entries. */
+    @Test
+    public void transpositionTableTest() {
+        TranspositionTable table = new TranspositionTable(1);
+        long key = new Board().hashKey();
+        assertEquals(0, table.probe(key));
+        int move = Move.mv("a4-3").pack();
+        table.store(key, 5, TranspositionTable.LOWER, -1234, move);
+        long entry = table.probe(key);
+        assertEquals(5, TranspositionTable.depth(entry));
+        assertEquals(TranspositionTable.LOWER, TranspositionTable.bound(entry));
+        assertEquals(-1234, TranspositionTable.score(entry));
+        assertEquals(move, TranspositionTable.move(entry));
+        assertEquals(0, table.probe(key + table.capacity()));
+        table.clear();
+        assertEquals(0, table.probe(key));
+    }
+
+    /** Check storing and retrieving static evaluations. */
+    @Test
+    public void evalCacheTest() {
+        EvalCache cache = new EvalCache(1);
+        long key = new Board().hashKey();
+        assertEquals(EvalCache.NONE, cache.probe(key));
+        cache.store(key, -150);
+        assertEquals(-150, cache.probe(key));
+        assertEquals(EvalCache.NONE, cache.probe(key + cache.capacity()));
+        cache.store(key + cache.capacity(), 0);
+        assertEquals(0, cache.probe(key + cache.capacity()));
+        assertEquals(EvalCache.NONE, cache.probe(key));
+        cache.clear();
+        assertEquals(EvalCache.NONE, cache.probe(key + cache.capacity()));
+    }
+
+    /** Check that a network's accumulator, kept up to date through moves,
+     *  undos, and copies, matches one computed afresh, and that networks
+     *  survive writing and reading. */
+    @Test
+    public void networkTest() throws IOException {
+        assertNull(new Board().network());
+        Network net = Network.random(16, 3);
+        Board b = new Board(net), fresh = new Board(net);
+        Piece[] contents = new Piece[Square.NUM_SQUARES];
+        int[] moves = new int[Board.MAX_MOVES];
+        Random random = new Random(5);
+        for (int i = 0; i < 60 && b.winner() == null; i += 1) {
+            int n = b.legalMoves(b.turn(), moves);
+            b.makeMove(moves[random.nextInt(n)]);
+            if (i % 4 == 3) {
+                b.undo();
+            }
+            for (int k = 0; k < Square.NUM_SQUARES; k += 1) {
+                contents[k] = b.get(Square.sq(k));
+            }
+            fresh.setPosition(contents, b.turn());
+            assertEquals(fresh.networkScore(), b.networkScore());
+            assertEquals(b.networkScore(), new Board(b).networkScore());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        net.write(bytes);
+        Network copy =
+            Network.read(new ByteArrayInputStream(bytes.toByteArray()));
+        fresh = new Board(copy);
+        fresh.setPosition(contents, b.turn());
+        assertEquals(b.networkScore(), fresh.networkScore());
+    }
+
+    /** Check that windows with an infinite bound, as used by full-window
+     *  searches and their re-searches, count as principal-variation
+     *  windows, which are not pruned, and null windows do not. */
+    @Test
+    public void pvWindowTest() {
+        int infty = Searcher.INFTY;
+        assertTrue(Searcher.isPVWindow(-infty, infty));
+        assertTrue(Searcher.isPVWindow(-infty, 50));
+        assertTrue(Searcher.isPVWindow(-50, infty));
+        assertTrue(Searcher.isPVWindow(-50, 50));
+        assertFalse(Searcher.isPVWindow(49, 50));
+        assertFalse(Searcher.isPVWindow(infty - 1, infty));
+    }
+
+    /** Check that full-window searches of positions with a single best
+     *  move find it whichever kinds of pruning are enabled. */
+    @Test
+    public void pruningTest() {
+        Board[] boards = {
+            position("e5", "", "e7 e3 c5 a1", Piece.WHITE),
+            position("c7", "", "b7 d3", Piece.BLACK),
+            position("e5", "", "e7 e3 c5 g5", Piece.WHITE),
+        };
+        String[] best = { "e5-i", "d3-7", "e5-6" };
+        for (int i = 0; i < boards.length; i += 1) {
+            for (int flags = 0; flags < 8; flags += 1) {
+                assertEquals(Move.mv(best[i]).pack(),
+                             searchMove(boards[i], 5, (flags & 1) != 0,
+                                        (flags & 2) != 0, (flags & 4) != 0));
+            }
+        }
+    }
+
+    /** Check that searches find wins in one move for each side and a win
+     *  in two moves against every defense. */
+    @Test
+    public void winSearchTest() {
+        Board b = position("e5", "", "e7 e3 c5 a1", Piece.WHITE);
+        assertEquals(Move.mv("e5-i").pack(),
+                     searchMove(b, 1, true, true, true));
+        b = position("c7", "", "b7 d3", Piece.BLACK);
+        assertEquals(Move.mv("d3-7").pack(),
+                     searchMove(b, 1, true, true, true));
+
+        b = position("e5", "", "e7 e3 c5 g5", Piece.WHITE);
+        int move = searchMove(b, 6, true, true, true);
+        b.makeMove(move);
+        assertNull(b.winner());
+        int[] replies = new int[Board.MAX_MOVES];
+        int n = b.legalMoves(Piece.BLACK, replies);
+        assertTrue(n > 0);
+        for (int i = 0; i < n; i += 1) {
+            b.makeMove(replies[i]);
+            assertTrue(b.isEscape(searchMove(b, 1, true, true, true)));
+            b.undo();
+        }
+    }
+
+    /** Check that a one-level search sees, through the quiescence
+     *  search, that a capture exposing the king loses at once, and
+     *  chooses a move after which the king cannot be captured. */
+    @Test
+    public void quiescenceTest() {
+        Board b = position("c7", "d7 c6 f8", "b7 c8 e8 d3", Piece.WHITE);
+        b.makeMove(Move.mv("d7-8"));
+        assertEquals(Move.mv("d3-7").pack(),
+                     searchMove(b, 1, true, true, true));
+        b.undo();
+        int move = searchMove(b, 1, true, true, true);
+        assertTrue(move != Move.mv("d7-8").pack());
+        b.makeMove(move);
+        int[] replies = new int[Board.MAX_MOVES];
+        int n = b.legalMoves(Piece.BLACK, replies);
+        for (int i = 0; i < n; i += 1) {
+            b.makeMove(replies[i]);
+            assertTrue(b.winner() != Piece.BLACK);
+            b.undo();
+        }
+    }
+
+    /** Return a board with the king on KING, white soldiers on the
+     *  squares listed in WHITES, black pieces on those in BLACKS (squares
+     *  separated by spaces), and TURN to move. */
+    private static Board position(String king, String whites, String blacks,
+                                  Piece turn) {
+        Piece[] contents = new Piece[Square.NUM_SQUARES];
+        Arrays.fill(contents, Piece.EMPTY);
+        contents[Square.sq(king).index()] = Piece.KING;
+        for (String sq : whites.split(" ")) {
+            if (!sq.isEmpty()) {
+                contents[Square.sq(sq).index()] = Piece.WHITE;
+            }
+        }
+        for (String sq : blacks.split(" ")) {
+            if (!sq.isEmpty()) {
+                contents[Square.sq(sq).index()] = Piece.BLACK;
+            }
+        }
+        Board board = new Board();
+        board.setPosition(contents, turn);
+        return board;
+    }
+
+    /** Return the move (in compact form) found by a search of BOARD to
+     *  DEPTH levels with a new transposition table, with null-move
+     *  pruning, late-move reductions, and futility pruning enabled iff
+     *  NULLMOVE, LMR, and FUTILITY. */
+    private static int searchMove(Board board, int depth, boolean nullMove,
+                                  boolean lmr, boolean futility) {
+        Searcher searcher = new Searcher();
+        TranspositionTable table = new TranspositionTable(1);
+        table.newSearch();
+        searcher.setPruning(nullMove, lmr, futility);
+        searcher.prepare(board, table, null, Long.MAX_VALUE, Long.MAX_VALUE);
+        return searcher.search(1, depth);
+    }
+
+    /** Check that a search on several threads finds a legal move and
+     *  leaves its board as it was. */
+    @Test
+    public void parallelSearchTest() {
+        Board b = new Board();
+        b.makeMove(Move.mv("a4-3"));
+        String before = b.encodedBoard();
+        Move move = new AI().findMove(b, 3, 0, 0, 4);
+        assertTrue(b.isLegal(move));
+        assertEquals(before, b.encodedBoard());
+        assertEquals(1, b.moveCount());
+    }
+
+    /** Check that MCTS finds legal moves, leaves its board as it was, and
+     *  is repeatable on one thread with a fixed number of playouts. */
+    @Test
+    public void mctsTest() {
+        Board b = new Board();
+        b.makeMove(Move.mv("a4-3"));
+        String before = b.encodedBoard();
+        Move move = new MCTS().findMove(b, 0, 500, 1, 17);
+        assertTrue(b.isLegal(move));
+        assertEquals(before, b.encodedBoard());
+        assertEquals(move, new MCTS().findMove(b, 0, 500, 1, 17));
+        assertTrue(b.isLegal(new MCTS().findMove(b, 0, 500, 3, 17)));
+
+        Piece[] contents = new Piece[Square.NUM_SQUARES];
+        Arrays.fill(contents, Piece.EMPTY);
+        contents[Square.sq("a1").index()] = Piece.BLACK;
+        contents[Square.sq("a2").index()] = Piece.WHITE;
+        contents[Square.sq("b1").index()] = Piece.WHITE;
+        contents[Board.THRONE.index()] = Piece.KING;
+        b.setPosition(contents, Piece.BLACK);
+        assertNull(new MCTS().findMove(b, 0, 500, 1, 17));
+    }
+
+    /** Check that AIs are always left a time or a node limit, whichever
+     *  of the two is cleared. */
+    @Test
+    public void searchLimitsTest() {
+        Recorder log = new Recorder();
+        ScriptPlayer script =
+            new ScriptPlayer("time 0", "nodes 1000", "time 0", "nodes 0",
+                             "time 200", "nodes 0");
+        Controller controller =
+            new Controller(new NullView(), null, log, script, script, false);
+        controller.play();
+        assertEquals(2, log.errors.size());
+        assertEquals(200, controller.searchTime());
+        assertEquals(0, controller.searchNodes());
+
+        log = new Recorder();
+        script = new ScriptPlayer("nodes 0", "time 0");
+        controller =
+            new Controller(new NullView(), null, log, script, script, false);
+        controller.setTesting();
+        controller.play();
+        assertEquals(1, log.errors.size());
+        assertEquals(0, controller.searchTime());
+        assertEquals(Controller.DEFAULT_TESTING_NODES,
+                     controller.searchNodes());
+    }
+
+    /** Check that an AI pondering on the reply it expects from a manual
+     *  opponent returns, when that reply is made, the move it finds
+     *  without pondering, and after a reply that blocks the move it
+     *  found by pondering, a winning move for the position reached. */
+    @Test
+    public void ponderTest() {
+        Controller controller = testController("ponder on");
+        AI ai = new AI(Piece.WHITE, controller);
+        Board board = controller.board();
+        board.makeMove(Move.mv("a4-3"));
+        board.makeMove(Move.mv(ai.myMove()));
+        Move reply = ai.expectedReply();
+        assertNotNull(reply);
+        board.makeMove(reply);
+        Move hit = Move.mv(ai.myMove());
+        assertTrue(board.isLegal(hit));
+        ai.stop();
+
+        Controller plain = testController();
+        AI unpondering = new AI(Piece.WHITE, plain);
+        Board plainBoard = plain.board();
+        plainBoard.makeMove(Move.mv("a4-3"));
+        plainBoard.makeMove(Move.mv(unpondering.myMove()));
+        assertNull(unpondering.expectedReply());
+        plainBoard.makeMove(reply);
+        assertEquals(hit, Move.mv(unpondering.myMove()));
+
+        Board start = position("e5", "", "e7 e3 c5 g5", Piece.WHITE);
+        controller = testController("ponder on");
+        ai = new AI(Piece.WHITE, controller);
+        board = controller.board();
+        board.copy(start);
+        board.makeMove(Move.mv(ai.myMove()));
+        reply = ai.expectedReply();
+        board.makeMove(reply);
+        hit = Move.mv(ai.myMove());
+        ai.stop();
+
+        controller = testController("ponder on");
+        ai = new AI(Piece.WHITE, controller);
+        board = controller.board();
+        board.copy(start);
+        board.makeMove(Move.mv(ai.myMove()));
+        assertEquals(reply, ai.expectedReply());
+        Move other = null;
+        for (Move move : board.legalMoves(Piece.BLACK)) {
+            board.makeMove(move);
+            boolean blocks = !board.isLegal(hit);
+            board.undo();
+            if (blocks) {
+                other = move;
+                break;
+            }
+        }
+        assertNotNull(other);
+        board.makeMove(other);
+        Move miss = Move.mv(ai.myMove());
+        assertTrue(board.isLegal(miss));
+        board.makeMove(miss);
+        assertEquals(Piece.WHITE, board.winner());
+    }
+
+    /** Check that stop ends pondering that has no limit of its own and
+     *  leaves the board as it was. */
+    @Test
+    public void ponderStopTest() {
+        Controller controller =
+            testController("ponder on", "time 100", "nodes 0");
+        AI ai = new AI(Piece.WHITE, controller);
+        Board board = controller.board();
+        board.makeMove(Move.mv("a4-3"));
+        board.makeMove(Move.mv(ai.myMove()));
+        String before = board.encodedBoard();
+        assertNotNull(ai.expectedReply());
+        ai.stop();
+        assertNull(ai.expectedReply());
+        assertEquals(before, board.encodedBoard());
+    }
+
+    /** Check that games between AIs set up for testing (see
+     *  Controller.setTesting) with the same seed have the same moves. */
+    @Test
+    public void testingRepeatableTest() {
+        Recorder[] logs = { new Recorder(), new Recorder() };
+        for (Recorder log : logs) {
+            ScriptPlayer script =
+                new ScriptPlayer("seed 7", "limit 4", "auto black");
+            Controller controller =
+                new Controller(new NullView(), null, log, script, new AI(),
+                               false);
+            controller.setTesting();
+            controller.play();
+            assertEquals(0, log.errors.size());
+        }
+        assertEquals(8, logs[0].moves.size());
+        assertEquals(logs[0].moves, logs[1].moves);
+    }
+
+    /** Check the format of the description of a search's statistics. */
+    @Test
+    public void searchStatsTest() {
+        SearchStats stats = new SearchStats();
+        stats.depth = 5;
+        stats.selDepth = 9;
+        stats.nodes = 1000;
+        stats.qnodes = 400;
+        stats.nanos = 500000000;
+        stats.threads = 2;
+        stats.probes = 200;
+        stats.hits = 50;
+        stats.collisions = 10;
+        stats.evalProbes = 100;
+        stats.evalHits = 25;
+        stats.cutoffs = 80;
+        stats.firstCutoffs = 72;
+        stats.lastIterationNodes = 600;
+        stats.prevIterationNodes = 200;
+        assertEquals("depth 5/9, 1000 nodes (400 quiescence) in 0.500 s,"
+                     + " 2000 nodes/s, 2 thread(s); TT 200 probes,"
+                     + " 25.0% hits, 5.0% collisions; eval cache 25.0% hits;"
+                     + " 90.0% of 80 cutoffs on first move; EBF 3.00",
+                     stats.toString());
+        assertTrue(new SearchStats().toString().endsWith("EBF 0.00"));
+    }
+
+    /** Check that the "stats" command reports the statistics of the last
+     *  search of each AI that has made one. */
+    @Test
+    public void statsCommandTest() {
+        Recorder log = new Recorder();
+        ScriptPlayer script = new ScriptPlayer("stats", "a4-3", "stats");
+        Controller controller =
+            new Controller(new NullView(), null, log, script, new AI(),
+                           false);
+        controller.setTesting();
+        controller.play();
+        assertEquals(0, log.errors.size());
+        assertEquals(1, log.moves.size());
+        assertEquals(2, log.notes.size());
+        assertEquals("No search statistics.", log.notes.get(0));
+        assertTrue(log.notes.get(1).matches(
+            "White: depth \\d+/\\d+, \\d+ nodes \\(\\d+ quiescence\\)"
+            + " in \\d+\\.\\d{3} s, \\d+ nodes/s, 1 thread\\(s\\);"
+            + " TT \\d+ probes, \\d+\\.\\d% hits, \\d+\\.\\d% collisions;"
+            + " eval cache \\d+\\.\\d% hits;"
+            + " \\d+\\.\\d% of \\d+ cutoffs on first move;"
+            + " EBF \\d+\\.\\d\\d"));
+    }
+
+    /** Return a Controller set up for testing (see
+     *  Controller.setTesting) whose black player is manual, after it has
+     *  executed COMMANDS. */
+    private static Controller testController(String... commands) {
+        ScriptPlayer script = new ScriptPlayer(commands);
+        Controller controller =
+            new Controller(new NullView(), null, new Recorder(), script,
+                           new AI(), false);
+        controller.setTesting();
+        controller.play();
+        return controller;
+    }
+
+    /** A Player that issues a fixed sequence of commands, shared by all
+     *  the players created from the same template, and then "quit". */
+    private static class ScriptPlayer extends Player {
 
+        /** A template for players issuing COMMANDS in order. */
+        ScriptPlayer(String... commands) {
+            this(null, null, new ArrayDeque<>(Arrays.asList(commands)));
+        }
 
+        /** A player of PIECE under control of CONTROLLER, issuing the
+         *  commands remaining in COMMANDS. */
+        private ScriptPlayer(Piece piece, Controller controller,
+                             Deque<String> commands) {
+            super(piece, controller);
+            _commands = commands;
+        }
+
+        @Override
+        Player create(Piece piece, Controller controller) {
+            return new ScriptPlayer(piece, controller, _commands);
+        }
+
+        @Override
+        boolean isManual() {
+            return true;
+        }
+
+        @Override
+        String myMove() {
+            return _commands.isEmpty() ? "quit" : _commands.remove();
+        }
+
+        /** The commands still to be issued. */
+        private final Deque<String> _commands;
+    }
+
+    /** A Reporter that records what it is asked to report. */
+    private static class Recorder implements Reporter {
+
+        @Override
+        public void reportError(String format, Object... args) {
+            errors.add(String.format(format, args));
+        }
+
+        @Override
+        public void reportNote(String format, Object... args) {
+            notes.add(String.format(format, args));
+        }
+
+        @Override
+        public void reportMove(Move move) {
+            moves.add(move);
+        }
+
+        /** The errors reported, in order. */
+        final List<String> errors = new ArrayList<>();
+        /** The notes reported, in order. */
+        final List<String> notes = new ArrayList<>();
+        /** The moves reported, in order. */
+        final List<Move> moves = new ArrayList<>();
+    }
+}
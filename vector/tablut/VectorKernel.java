@@ -0,0 +1,73 @@
+package tablut;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** A Network.Kernel using the JDK's incubating Vector API, which the
+ *  just-in-time compiler turns into SIMD instructions.  Network loads it
+ *  by name if it is on the class path (see ../Makefile), so that the
+ *  rest of the program compiles and runs without the
+ *  jdk.incubator.vector module.
+ *  @author Fourth Teerakapibal
+ */
+public final class VectorKernel implements Network.Kernel {
+
+    @Override
+    public void add(short[] acc, short[] weights, int offset) {
+        int i, bound = SHORTS.loopBound(acc.length);
+        for (i = 0; i < bound; i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, acc, i)
+                .add(ShortVector.fromArray(SHORTS, weights, offset + i))
+                .intoArray(acc, i);
+        }
+        for (; i < acc.length; i += 1) {
+            acc[i] += weights[offset + i];
+        }
+    }
+
+    @Override
+    public void subtract(short[] acc, short[] weights, int offset) {
+        int i, bound = SHORTS.loopBound(acc.length);
+        for (i = 0; i < bound; i += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, acc, i)
+                .sub(ShortVector.fromArray(SHORTS, weights, offset + i))
+                .intoArray(acc, i);
+        }
+        for (; i < acc.length; i += 1) {
+            acc[i] -= weights[offset + i];
+        }
+    }
+
+    @Override
+    public int dot(short[] acc, short[] weights, int limit) {
+        IntVector sums = IntVector.zero(INTS);
+        short zero = 0, top = (short) limit;
+        int i, bound = SHORTS.loopBound(acc.length);
+        for (i = 0; i < bound; i += SHORTS.length()) {
+            ShortVector a = ShortVector.fromArray(SHORTS, acc, i)
+                .max(zero).min(top);
+            ShortVector w = ShortVector.fromArray(SHORTS, weights, i);
+            for (int part = 0; part < 2; part += 1) {
+                IntVector a32 = (IntVector)
+                    a.convertShape(VectorOperators.S2I, INTS, part);
+                IntVector w32 = (IntVector)
+                    w.convertShape(VectorOperators.S2I, INTS, part);
+                sums = sums.add(a32.mul(w32));
+            }
+        }
+        int sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < acc.length; i += 1) {
+            sum += Math.min(Math.max(acc[i], 0), limit) * weights[i];
+        }
+        return sum;
+    }
+
+    /** The preferred shape of vector of shorts, and the vectors of ints
+     *  of the same size, which hold half as many lanes. */
+    private static final VectorSpecies<Short> SHORTS =
+        ShortVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS =
+        SHORTS.withLanes(int.class);
+}